@@ -0,0 +1,76 @@
+package ru.urfu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.urfu.bot.commands.Command;
+import ru.urfu.bot.commands.CommandRegistry;
+import ru.urfu.bot.keyboards.IKeyboard;
+import ru.urfu.bot.keyboards.Keyboards;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор команды основного меню: прежний путь через getCommand клавиатуры и switch по строкам
+ * против таблицы команд
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark {
+    private final String[] inputs = {"❤️", "👎", "Еще", "2", "лайк", "привет", "1", "Ок, понял"};
+    private int next;
+
+    @Benchmark
+    public Command stringSwitch() {
+        return resolveWithSwitch(Keyboards.main, nextInput());
+    }
+
+    @Benchmark
+    public Command registry() {
+        return CommandRegistry.defaultMenu.resolve(Keyboards.main, nextInput());
+    }
+
+    private String nextInput() {
+        next = next + 1 == inputs.length ? 0 : next + 1;
+        return inputs[next];
+    }
+
+    /**
+     * Прежний разбор команды основного меню из UpdateHandler
+     */
+    private static Command resolveWithSwitch(IKeyboard keyboard, String text) {
+        switch (keyboard.getCommand(text)) {
+            case ("Дальше"):
+            case ("Назад"):
+            case ("Ок, понял"):
+            case ("Поехали!🙀"):
+            case ("👎"):
+                return Command.next;
+
+            case ("Лайк"):
+            case ("лайк"):
+            case ("❤️"):
+                return Command.like;
+
+            case ("eщё"):
+            case ("еще"):
+            case ("Ещё"):
+            case ("Еще"):
+                return Command.more;
+
+            default:
+                return Command.unknown;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.urfu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.urfu.bot.MatchHandler;
+import ru.urfu.bot.locations.Location;
+import ru.urfu.bot.locations.LocationData;
+import ru.urfu.profile.Profile;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск профилей в радиусе 10 км, как в ленте анкет
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class GeoBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int profiles;
+
+    private LocationData locationData;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MatchHandler.clear();
+        locationData = new LocationData();
+        for (var profile : Profiles.generate(profiles, 4)) {
+            if (profile.getLocation() != null) {
+                locationData.addProfile(profile);
+            }
+        }
+        random = new SplittableRandom(5);
+    }
+
+    @Benchmark
+    public List<Profile> getProfilesInRadius() {
+        var location = new Location(Profiles.longitude + random.nextDouble() - 0.5,
+                Profiles.latitude + random.nextDouble() - 0.5);
+        return locationData.getProfilesIn(location, 10);
+    }
+
+    @Benchmark
+    public List<Profile> getNearestProfiles() {
+        var location = new Location(Profiles.longitude + random.nextDouble() - 0.5,
+                Profiles.latitude + random.nextDouble() - 0.5);
+        return locationData.getProfilesIn(location, 10, 20);
+    }
+}
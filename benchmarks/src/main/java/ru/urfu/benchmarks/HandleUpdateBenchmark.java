@@ -0,0 +1,83 @@
+package ru.urfu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.urfu.bot.IUpdate;
+import ru.urfu.bot.InnerMessage;
+import ru.urfu.bot.InnerUpdate;
+import ru.urfu.bot.InnerUser;
+import ru.urfu.bot.MatchHandler;
+import ru.urfu.bot.UpdateHandler;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обработка апдейта целиком: команда, сессия, выбор анкеты, подпись и постановка в очередь отправки.
+ * Отправка идет в заглушку, поэтому время сети не учитывается
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class HandleUpdateBenchmark {
+    private static final int users = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int profiles;
+
+    private UpdateHandler handler;
+    private IUpdate[] dislikes;
+    private IUpdate[] likes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MatchHandler.clear();
+        Profiles.stubSender();
+        handler = new UpdateHandler(Profiles.storageOf(Profiles.generate(profiles, 6)));
+
+        dislikes = new IUpdate[users];
+        likes = new IUpdate[users];
+        for (var i = 0; i < users; i++) {
+            long id = i % profiles + 1;
+            var user = new InnerUser(id, "user" + id, true);
+            dislikes[i] = new InnerUpdate(new InnerMessage(user, "👎", id, List.of()), true);
+            likes[i] = new InnerUpdate(new InnerMessage(user, "❤️", id, List.of()), true);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handler.close();
+    }
+
+    @Benchmark
+    public void handleDislike() {
+        handler.handleUpdate(dislikes[nextUser()]);
+    }
+
+    @Benchmark
+    public void handleLike() {
+        handler.handleUpdate(likes[nextUser()]);
+    }
+
+    private int nextUser() {
+        next = next + 1 == users ? 0 : next + 1;
+        return next;
+    }
+}
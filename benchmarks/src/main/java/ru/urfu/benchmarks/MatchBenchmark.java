@@ -0,0 +1,70 @@
+package ru.urfu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.urfu.bot.MatchHandler;
+import ru.urfu.profile.Profile;
+
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лайки и чтение взаимных симпатий. У каждого профиля заранее есть около 20 лайков,
+ * примерно четверть из них взаимные
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class MatchBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int profiles;
+
+    private List<Profile> list;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MatchHandler.clear();
+        list = Profiles.generate(profiles, 2);
+        random = new SplittableRandom(3);
+        for (var liker : list) {
+            for (var i = 0; i < 20; i++) {
+                var liked = randomProfile();
+                MatchHandler.likeProfile(liker, liked);
+                if (i % 4 == 0) {
+                    MatchHandler.likeProfile(liked, liker);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean likeProfile() {
+        return MatchHandler.likeProfile(randomProfile(), randomProfile());
+    }
+
+    @Benchmark
+    public Set<Profile> getMutualLikes() {
+        return MatchHandler.getMutualLikes(randomProfile());
+    }
+
+    private Profile randomProfile() {
+        return list.get(random.nextInt(list.size()));
+    }
+}
@@ -0,0 +1,75 @@
+package ru.urfu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.urfu.discord.PhotoRelay;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подготовка фото к отправке в Discord: прежнее декодирование и перекодирование в PNG
+ * против передачи исходных байтов. Фото 1280x960 JPEG читается из локального файла, чтобы не мерить сеть
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhotoRelayBenchmark {
+    private Path photo;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var image = new BufferedImage(1280, 960, BufferedImage.TYPE_INT_RGB);
+        var random = new Random(7);
+        for (var y = 0; y < image.getHeight(); y++) {
+            for (var x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 255 / image.getWidth()) << 16 | (y * 255 / image.getHeight()) << 8 | random.nextInt(64));
+            }
+        }
+        photo = Files.createTempFile("photo", ".jpg");
+        ImageIO.write(image, "jpg", photo.toFile());
+        url = photo.toUri().toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(photo);
+    }
+
+    /**
+     * Прежний путь: ImageIO.read, затем запись PNG
+     */
+    @Benchmark
+    public byte[] reencodeToPng() throws IOException {
+        var image = ImageIO.read(photo.toUri().toURL());
+        var bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] relayOriginalBytes() throws IOException {
+        return PhotoRelay.download(url);
+    }
+}
@@ -0,0 +1,88 @@
+package ru.urfu.benchmarks;
+
+import ru.urfu.bot.MessageSender;
+import ru.urfu.bot.keyboards.Keyboards;
+import ru.urfu.bot.locations.Location;
+import ru.urfu.bot.outbound.OutboundQueue;
+import ru.urfu.bot.storage.IStorage;
+import ru.urfu.bot.storage.IStorageListener;
+import ru.urfu.profile.Gender;
+import ru.urfu.profile.Profile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Генерирует профили для бенчмарков и подменяет отправку сообщений заглушкой
+ */
+
+public class Profiles {
+    /**
+     * Центр области, по которой раскиданы профили (Екатеринбург)
+     */
+    public static final double longitude = 60.6;
+    public static final double latitude = 56.8;
+
+    /**
+     * Создает профили с id от 1 до count. Половина профилей получает локацию в квадрате около 100 км
+     * @param count количество
+     * @param seed зерно генератора
+     * @return профили
+     */
+    public static List<Profile> generate(int count, long seed) {
+        var random = new Random(seed);
+        var profiles = new ArrayList<Profile>(count);
+        for (var id = 1; id <= count; id++) {
+            var profile = new Profile(id);
+            profile.setName("Имя" + id);
+            profile.setUserName("user" + id);
+            profile.setCity("Екатеринбург");
+            profile.setAge(18 + random.nextInt(30));
+            profile.setGender(Gender.values()[random.nextInt(Gender.values().length)]);
+            profile.setPhotoLink("photo" + id);
+            profile.setCurrentKeyboard(Keyboards.main);
+            if (random.nextBoolean()) {
+                profile.setLocation(new Location(longitude + random.nextDouble() - 0.5, latitude + random.nextDouble() - 0.5));
+            }
+            profiles.add(profile);
+        }
+        return profiles;
+    }
+
+    /**
+     * Хранилище, которое при восстановлении отдает заданные профили, а записи игнорирует
+     * @param profiles профили
+     * @return хранилище
+     */
+    public static IStorage storageOf(List<Profile> profiles) {
+        return new IStorage() {
+            @Override
+            public void saveProfile(Profile profile) {
+            }
+
+            @Override
+            public void saveLike(long likerId, long likedId) {
+            }
+
+            @Override
+            public void saveUnlike(long likerId, long likedId) {
+            }
+
+            @Override
+            public void recover(IStorageListener listener) {
+                for (var profile : profiles) {
+                    listener.onProfile(profile);
+                }
+            }
+        };
+    }
+
+    /**
+     * Отправка сообщений уходит в заглушку без ограничений частоты
+     */
+    public static void stubSender() {
+        var queue = new OutboundQueue(message -> { }, 1e9, 1e9, 1_000_000, 1);
+        MessageSender.useQueues(queue, queue);
+    }
+}
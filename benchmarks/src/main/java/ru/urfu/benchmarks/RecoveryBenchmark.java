@@ -0,0 +1,128 @@
+package ru.urfu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.urfu.bot.MatchHandler;
+import ru.urfu.bot.ProfileData;
+import ru.urfu.bot.storage.IStorage;
+import ru.urfu.bot.storage.IStorageListener;
+import ru.urfu.bot.storage.LogStorage;
+import ru.urfu.bot.storage.ProfileCodec;
+import ru.urfu.profile.Profile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Холодный старт: восстановление ProfileData из снимка в формате MappedSnapshot с ленивыми профилями
+ * и из того же набора профилей, записанного подряд и разобранного ProfileCodec.read целиком.
+ * Оба варианта проходят через ProfileData.recover, поэтому в замер входит и построение индексов
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class RecoveryBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int profiles;
+
+    private Path directory;
+    private Path eagerPath;
+    private LogStorage snapshotStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        MatchHandler.clear();
+        directory = Files.createTempDirectory("recovery-benchmark");
+        eagerPath = directory.resolve("profiles.bin");
+
+        var list = Profiles.generate(profiles, 4);
+        snapshotStorage = new LogStorage(directory.resolve("storage"));
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(eagerPath), 1 << 16))) {
+            out.writeInt(list.size());
+            for (var profile : list) {
+                snapshotStorage.saveProfile(profile);
+                ProfileCodec.write(profile, out);
+            }
+        }
+        snapshotStorage.compact();
+        MatchHandler.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        snapshotStorage.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public ProfileData mappedSnapshot() {
+        MatchHandler.clear();
+        var profileData = new ProfileData(snapshotStorage);
+        profileData.recover();
+        return profileData;
+    }
+
+    @Benchmark
+    public ProfileData eagerDecoder() {
+        MatchHandler.clear();
+        var profileData = new ProfileData(eagerStorage());
+        profileData.recover();
+        return profileData;
+    }
+
+    /**
+     * Хранилище, которое при восстановлении разбирает файл с профилями подряд, без снимка
+     */
+    private IStorage eagerStorage() {
+        return new IStorage() {
+            @Override
+            public void saveProfile(Profile profile) {
+            }
+
+            @Override
+            public void saveLike(long likerId, long likedId) {
+            }
+
+            @Override
+            public void saveUnlike(long likerId, long likedId) {
+            }
+
+            @Override
+            public void recover(IStorageListener listener) {
+                try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(eagerPath), 1 << 16))) {
+                    var count = in.readInt();
+                    for (var i = 0; i < count; i++) {
+                        listener.onProfile(ProfileCodec.read(in));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
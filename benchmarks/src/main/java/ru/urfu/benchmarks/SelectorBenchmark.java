@@ -0,0 +1,50 @@
+package ru.urfu.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.urfu.bot.MatchHandler;
+import ru.urfu.bot.ProfileData;
+import ru.urfu.bot.ProfileSelector;
+import ru.urfu.bot.ProfileWrapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выбор следующей анкеты: сначала поблизости, потом по всей ленте
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class SelectorBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int profiles;
+
+    private ProfileSelector selector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MatchHandler.clear();
+        var profileData = new ProfileData(Profiles.storageOf(Profiles.generate(profiles, 1)));
+        profileData.recover();
+        selector = new ProfileSelector(profileData.getMap().get(1L), profileData);
+    }
+
+    @Benchmark
+    public ProfileWrapper getNextProfileWrapper() {
+        return selector.getNextProfileWrapper();
+    }
+}
@@ -0,0 +1,13 @@
+package ru.urfu.benchmarks.load;
+
+/**
+ * Действия виртуального юзера. Регистрация и просмотр меню симпатий состоят из нескольких апдейтов подряд
+ */
+
+public enum Action {
+    register,
+    swipe,
+    like,
+    location,
+    menu
+}
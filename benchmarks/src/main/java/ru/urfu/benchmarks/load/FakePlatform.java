@@ -0,0 +1,53 @@
+package ru.urfu.benchmarks.load;
+
+import ru.urfu.bot.outbound.IOutboundTransport;
+import ru.urfu.bot.outbound.OutboundMessage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Локальная замена Telegram или Discord: принимает исходящие сообщения, считает их
+ * и при необходимости изображает задержку сети
+ */
+
+public class FakePlatform implements IOutboundTransport {
+    private final long sendDelayNanos;
+
+    private final LongAdder texts = new LongAdder();
+    private final LongAdder photos = new LongAdder();
+    private final LongAdder albums = new LongAdder();
+
+    /**
+     * @param sendDelayMillis сколько длится один запрос к платформе
+     */
+    public FakePlatform(long sendDelayMillis) {
+        this.sendDelayNanos = TimeUnit.MILLISECONDS.toNanos(sendDelayMillis);
+    }
+
+    @Override
+    public void send(OutboundMessage message) throws InterruptedException {
+        if (message.isAlbum()) {
+            albums.increment();
+        } else if (message.hasPhoto()) {
+            photos.increment();
+        } else {
+            texts.increment();
+        }
+        if (sendDelayNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(sendDelayNanos);
+        }
+    }
+
+    public long getTextCount() {
+        return texts.sum();
+    }
+
+    public long getPhotoCount() {
+        return photos.sum();
+    }
+
+    public long getAlbumCount() {
+        return albums.sum();
+    }
+}
@@ -0,0 +1,45 @@
+package ru.urfu.benchmarks.load;
+
+import java.util.Arrays;
+
+/**
+ * Хранит все замеры задержки, чтобы в конце посчитать точные перцентили.
+ * Один замер занимает 8 байт, миллион апдейтов - 8 МБ
+ */
+
+public class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int size;
+
+    /**
+     * @param nanos задержка в наносекундах
+     */
+    public synchronized void record(long nanos) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param quantiles доли от 0 до 1
+     * @return задержки в наносекундах для каждой доли, нули если замеров нет
+     */
+    public synchronized long[] percentiles(double... quantiles) {
+        var result = new long[quantiles.length];
+        if (size == 0) {
+            return result;
+        }
+        var sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        for (var i = 0; i < quantiles.length; i++) {
+            var index = (int) Math.ceil(quantiles[i] * size) - 1;
+            result[i] = sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,249 @@
+package ru.urfu.benchmarks.load;
+
+import ru.urfu.benchmarks.Profiles;
+import ru.urfu.bot.DispatcherFactory;
+import ru.urfu.bot.IUpdate;
+import ru.urfu.bot.IUpdateDispatcher;
+import ru.urfu.bot.MatchHandler;
+import ru.urfu.bot.MessageSender;
+import ru.urfu.bot.UpdateHandler;
+import ru.urfu.bot.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный прогон бота целиком в одном процессе: виртуальные юзеры шлют апдейты с заданной частотой,
+ * бот обрабатывает их тем же диспетчером и обработчиком, что и в проде, а ответы уходят в локальную замену платформы.
+ * В конце печатается пропускная способность и задержка от апдейта до ответа (p50, p99, p999).
+ *
+ * Запуск: java -cp target/benchmarks.jar ru.urfu.benchmarks.load.LoadGenerator --rate 2000 --duration 60
+ * Параметры:
+ * --profiles анкет в базе до начала прогона (10000)
+ * --users активных юзеров из этих анкет (1000)
+ * --rate апдейтов в секунду (1000)
+ * --duration секунд замера (30) и --warmup секунд прогрева (5)
+ * --mix доли новых действий, например swipe=60,like=25,menu=5,location=5,register=5
+ * --platform telegram, discord или both (telegram)
+ * --limits none или real - ограничения частоты отправки как у настоящих платформ (none)
+ * --send-delay сколько миллисекунд длится один запрос к платформе (0)
+ * Если задана переменная среды METRICS_LOG_SECONDS, в конце печатается и сводка замеров по этапам
+ */
+
+public class LoadGenerator {
+    private static final int pickAttempts = 8;
+
+    private final Map<String, String> options;
+    private final LoadStats stats = new LoadStats();
+    private final Map<Long, VirtualUser> usersById = new ConcurrentHashMap<>();
+    private final List<VirtualUser> users = new ArrayList<>();
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final Map<Action, Integer> mix;
+    private final int mixTotal;
+    private final String platform;
+
+    private UpdateHandler handler;
+    private IUpdateDispatcher dispatcher;
+    private FakePlatform fakePlatform;
+    private RecordingQueue telegramQueue;
+    private RecordingQueue discordQueue;
+    private long nextNewId;
+
+    public LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.mix = parseMix(option("mix", "swipe=60,like=25,menu=5,location=5,register=5"));
+        this.mixTotal = mix.values().stream().mapToInt(Integer::intValue).sum();
+        this.platform = option("platform", "telegram");
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        var options = new HashMap<String, String>();
+        for (var i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    public void run() throws InterruptedException {
+        setUp();
+
+        var rate = Double.parseDouble(option("rate", "1000"));
+        var interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        var start = System.nanoTime();
+        var measureFrom = start + TimeUnit.SECONDS.toNanos(Long.parseLong(option("warmup", "5")));
+        var end = measureFrom + TimeUnit.SECONDS.toNanos(Long.parseLong(option("duration", "30")));
+        stats.measure(measureFrom, end);
+        System.out.printf(Locale.ROOT, "Прогон: %s апдейтов в секунду, %d юзеров, %d анкет%n",
+                option("rate", "1000"), users.size(), nextNewId - 1);
+
+        for (long tick = 0; ; tick++) {
+            var target = start + tick * interval;
+            var now = System.nanoTime();
+            if (target >= end) {
+                break;
+            }
+            if (target > now) {
+                LockSupport.parkNanos(target - now);
+            }
+            next(target >= measureFrom);
+        }
+
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (users.stream().anyMatch(user -> user.busy) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        report((end - measureFrom) / 1e9);
+        handler.close();
+    }
+
+    private void setUp() {
+        MatchHandler.clear();
+        var profiles = Integer.parseInt(option("profiles", "10000"));
+        var activeUsers = Math.min(profiles, Integer.parseInt(option("users", "1000")));
+        handler = new UpdateHandler(Profiles.storageOf(Profiles.generate(profiles, 1)));
+
+        fakePlatform = new FakePlatform(Long.parseLong(option("send-delay", "0")));
+        if ("real".equals(option("limits", "none"))) {
+            telegramQueue = new RecordingQueue(fakePlatform, 30, 1, 3, usersById, stats);
+            discordQueue = new RecordingQueue(fakePlatform, 50, 5, 5, usersById, stats);
+        } else {
+            telegramQueue = new RecordingQueue(fakePlatform, 1e9, 1e9, 1_000_000, usersById, stats);
+            discordQueue = new RecordingQueue(fakePlatform, 1e9, 1e9, 1_000_000, usersById, stats);
+        }
+        MessageSender.useQueues(telegramQueue, discordQueue);
+        dispatcher = DispatcherFactory.fromEnvironment();
+
+        for (long id = 1; id <= activeUsers; id++) {
+            addUser(id);
+        }
+        nextNewId = profiles + 1;
+    }
+
+    /**
+     * Отправляет апдейт от случайного свободного юзера. Юзер посреди регистрации или меню продолжает свой сценарий,
+     * остальные начинают новое действие по заданным долям
+     * @param measured идет ли замер
+     */
+    private void next(boolean measured) {
+        var user = pickIdleUser();
+        if (user == null) {
+            if (measured) {
+                stats.skipped.increment();
+            }
+            return;
+        }
+
+        if (user.script.isEmpty()) {
+            var action = pickAction();
+            if (action == Action.register) {
+                user = addUser(nextNewId++);
+            }
+            user.plan(action, Profiles.longitude + random.nextDouble() - 0.5,
+                    Profiles.latitude + random.nextDouble() - 0.5);
+        }
+
+        var update = user.script.poll();
+        var current = user;
+        current.start(System.nanoTime());
+        if (measured) {
+            stats.dispatched.increment();
+        }
+        dispatcher.dispatch(current.id, () -> handle(current, update));
+    }
+
+    /**
+     * Обрабатывает апдейт так же, как это делает бот
+     */
+    private void handle(VirtualUser user, IUpdate update) {
+        try {
+            if (update.hasLocation()) {
+                handler.handleLocation(update);
+            }
+            handler.handleUpdate(update);
+        } finally {
+            stats.release(user);
+        }
+    }
+
+    private VirtualUser pickIdleUser() {
+        for (var i = 0; i < pickAttempts; i++) {
+            var user = users.get(random.nextInt(users.size()));
+            if (!user.busy) {
+                return user;
+            }
+        }
+        return null;
+    }
+
+    private Action pickAction() {
+        var value = random.nextInt(mixTotal);
+        for (var entry : mix.entrySet()) {
+            value -= entry.getValue();
+            if (value < 0) {
+                return entry.getKey();
+            }
+        }
+        return Action.swipe;
+    }
+
+    private VirtualUser addUser(long id) {
+        var telegram = "telegram".equals(platform) || "both".equals(platform) && id % 2 == 0;
+        var user = new VirtualUser(id, telegram);
+        usersById.put(id, user);
+        users.add(user);
+        return user;
+    }
+
+    private void report(double seconds) {
+        System.out.printf(Locale.ROOT, "Апдейтов в секунду: отправлено %.0f, обработано %.0f%n",
+                stats.dispatched.sum() / seconds, stats.completed.sum() / seconds);
+        System.out.printf(Locale.ROOT, "Пропущено тиков (все выбранные юзеры ждали ответа): %d, апдейтов без ответа: %d%n",
+                stats.skipped.sum(), stats.unanswered.sum());
+        System.out.printf(Locale.ROOT, "Отправлено платформе: текстов %d, фото %d, альбомов %d, склеено текстов %d%n",
+                fakePlatform.getTextCount(), fakePlatform.getPhotoCount(), fakePlatform.getAlbumCount(),
+                telegramQueue.getCoalescedCount() + discordQueue.getCoalescedCount());
+
+        System.out.println();
+        System.out.println("Задержка, мс: до первого ответа / до последнего ответа");
+        System.out.printf(Locale.ROOT, "%-10s %8s %17s %17s %17s %17s%n", "действие", "апдейтов", "p50", "p99", "p999", "max");
+        for (var action : Action.values()) {
+            var first = stats.getFirstReply(action).percentiles(0.5, 0.99, 0.999, 1);
+            var full = stats.getFullReply(action).percentiles(0.5, 0.99, 0.999, 1);
+            if (stats.getFullReply(action).size() == 0) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-10s %8d", action, stats.getFullReply(action).size());
+            for (var i = 0; i < first.length; i++) {
+                System.out.printf(Locale.ROOT, " %8.3f/%8.3f", first[i] / 1e6, full[i] / 1e6);
+            }
+            System.out.println();
+        }
+
+        if (Metrics.enabled) {
+            System.out.println();
+            System.out.print(Metrics.dump());
+        }
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static Map<Action, Integer> parseMix(String text) {
+        var result = new EnumMap<Action, Integer>(Action.class);
+        for (var part : text.split(",")) {
+            var pair = part.trim().split("=");
+            result.put(Action.valueOf(pair[0]), Integer.parseInt(pair[1]));
+        }
+        return result;
+    }
+}
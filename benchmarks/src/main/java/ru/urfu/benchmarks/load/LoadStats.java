@@ -0,0 +1,75 @@
+package ru.urfu.benchmarks.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Замеры нагрузочного прогона: задержка от апдейта до первого ответа и до последнего ответа по каждому действию.
+ * Апдейты, начатые во время прогрева, не учитываются
+ */
+
+public class LoadStats {
+    private final Map<Action, LatencyRecorder> firstReply = new EnumMap<>(Action.class);
+    private final Map<Action, LatencyRecorder> fullReply = new EnumMap<>(Action.class);
+    private volatile long measureFrom = Long.MAX_VALUE;
+    private volatile long measureUntil = Long.MAX_VALUE;
+
+    final LongAdder dispatched = new LongAdder();
+    final LongAdder completed = new LongAdder();
+    final LongAdder unanswered = new LongAdder();
+    final LongAdder skipped = new LongAdder();
+
+    public LoadStats() {
+        for (var action : Action.values()) {
+            firstReply.put(action, new LatencyRecorder());
+            fullReply.put(action, new LatencyRecorder());
+        }
+    }
+
+    /**
+     * Задает окно замеров
+     */
+    void measure(long from, long until) {
+        measureFrom = from;
+        measureUntil = until;
+    }
+
+    boolean isMeasured(long startedAt) {
+        return startedAt >= measureFrom && startedAt < measureUntil;
+    }
+
+    /**
+     * Юзер получил сообщение от бота
+     */
+    void onReply(VirtualUser user) {
+        if (user.replied.compareAndSet(false, true) && isMeasured(user.startedAt)) {
+            firstReply.get(user.action).record(System.nanoTime() - user.startedAt);
+        }
+    }
+
+    /**
+     * Обработка апдейта или отправка одного из ответов закончилась. Когда закончилось все, юзер свободен
+     */
+    void release(VirtualUser user) {
+        if (user.outstanding.decrementAndGet() != 0) {
+            return;
+        }
+        if (isMeasured(user.startedAt)) {
+            fullReply.get(user.action).record(System.nanoTime() - user.startedAt);
+            completed.increment();
+            if (!user.replied.get()) {
+                unanswered.increment();
+            }
+        }
+        user.busy = false;
+    }
+
+    LatencyRecorder getFirstReply(Action action) {
+        return firstReply.get(action);
+    }
+
+    LatencyRecorder getFullReply(Action action) {
+        return fullReply.get(action);
+    }
+}
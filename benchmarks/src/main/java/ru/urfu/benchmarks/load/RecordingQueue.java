@@ -0,0 +1,43 @@
+package ru.urfu.benchmarks.load;
+
+import ru.urfu.bot.outbound.IOutboundTransport;
+import ru.urfu.bot.outbound.OutboundMessage;
+import ru.urfu.bot.outbound.OutboundQueue;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Очередь исходящих сообщений, которая сообщает виртуальному юзеру о каждом ответе бота
+ */
+
+public class RecordingQueue extends OutboundQueue {
+    private final Map<Long, VirtualUser> users;
+    private final LoadStats stats;
+
+    /**
+     * @param users виртуальные юзеры по id чата
+     * @param stats куда писать замеры
+     */
+    public RecordingQueue(IOutboundTransport transport, double globalPerSecond, double chatPerSecond, int chatBurst,
+                          Map<Long, VirtualUser> users, LoadStats stats) {
+        super(transport, globalPerSecond, chatPerSecond, chatBurst, 8);
+        this.users = users;
+        this.stats = stats;
+    }
+
+    @Override
+    public CompletableFuture<Void> submit(OutboundMessage message) {
+        var user = users.get(message.getChatId());
+        if (user == null) {
+            return super.submit(message);
+        }
+        user.outstanding.incrementAndGet();
+        var future = super.submit(message);
+        future.whenComplete((result, error) -> {
+            stats.onReply(user);
+            stats.release(user);
+        });
+        return future;
+    }
+}
@@ -0,0 +1,96 @@
+package ru.urfu.benchmarks.load;
+
+import ru.urfu.bot.IUpdate;
+import ru.urfu.bot.InnerMessage;
+import ru.urfu.bot.InnerPhoto;
+import ru.urfu.bot.InnerUpdate;
+import ru.urfu.bot.InnerUser;
+import ru.urfu.bot.locations.Location;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Виртуальный юзер. Отправляет следующий апдейт только после того, как бот полностью ответил на предыдущий,
+ * как это делает живой человек
+ */
+
+public class VirtualUser {
+    final long id;
+    final boolean telegram;
+    private final InnerUser user;
+
+    /**
+     * Оставшиеся апдейты многошагового действия. Трогает только поток генератора
+     */
+    final ArrayDeque<IUpdate> script = new ArrayDeque<>();
+
+    volatile boolean busy;
+    volatile Action action;
+    volatile long startedAt;
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AtomicBoolean replied = new AtomicBoolean();
+
+    public VirtualUser(long id, boolean telegram) {
+        this.id = id;
+        this.telegram = telegram;
+        this.user = new InnerUser(id, "user" + id, telegram);
+    }
+
+    /**
+     * Заполняет сценарий действия
+     * @param action действие
+     * @param longitude долгота для отправки локации
+     * @param latitude широта для отправки локации
+     */
+    void plan(Action action, double longitude, double latitude) {
+        this.action = action;
+        switch (action) {
+            case register:
+                script.add(text("/start"));
+                script.add(text("Имя" + id));
+                script.add(text("Женский🙋‍♀️"));
+                script.add(text(String.valueOf(18 + id % 30)));
+                script.add(text("Екатеринбург"));
+                script.add(new InnerUpdate(new InnerMessage(user, null, id, List.of(new InnerPhoto("photo" + id))), telegram));
+                script.add(text("Поехали!🙀"));
+                break;
+
+            case swipe:
+                script.add(text("👎"));
+                break;
+
+            case like:
+                script.add(text("❤️"));
+                break;
+
+            case location:
+                script.add(new InnerUpdate(new InnerMessage(user, null, id, List.of()), telegram,
+                        new Location(longitude, latitude)));
+                break;
+
+            case menu:
+                script.add(text("Еще"));
+                script.add(text(id % 2 == 0 ? "Мои ❤️" : "Взаимные 💞"));
+                script.add(text("Назад"));
+                break;
+        }
+    }
+
+    /**
+     * Отмечает начало обработки апдейта. Одна единица в outstanding - сама обработка,
+     * остальные добавляются за каждое поставленное в очередь сообщение
+     */
+    void start(long now) {
+        startedAt = now;
+        replied.set(false);
+        outstanding.set(1);
+        busy = true;
+    }
+
+    private IUpdate text(String text) {
+        return new InnerUpdate(new InnerMessage(user, text, id, List.of()), telegram);
+    }
+}
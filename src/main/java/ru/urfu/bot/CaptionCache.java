@@ -0,0 +1,73 @@
+package ru.urfu.bot;
+
+import ru.urfu.profile.Profile;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш подписей к анкетам. Подпись считается один раз и пересчитывается, только когда меняется версия профиля.
+ * Меняющиеся части (расстояние, "ты понравился") дописываются перед подписью при отправке
+ */
+
+public class CaptionCache {
+    private static final String likedPrefix = "Ты понравился одному человеку!\n";
+
+    private final Map<Long, Caption> captions = new ConcurrentHashMap<>();
+
+    /**
+     * @param profile профиль
+     * @return подпись: имя, город, возраст и ник
+     */
+    public String getCaption(Profile profile) {
+        var version = profile.getVersion();
+        var caption = captions.get(profile.ID);
+        if (caption == null || caption.version != version) {
+            caption = new Caption(version, render(profile));
+            captions.put(profile.ID, caption);
+        }
+        return caption.text;
+    }
+
+    /**
+     * Собирает подпись вместе с меняющимися частями за одно выделение памяти
+     * @param profile профиль
+     * @param distance расстояние в км или -1, если его не нужно показывать
+     * @param liked понравился ли юзер этому профилю
+     * @return подпись
+     */
+    public String getCaption(Profile profile, int distance, boolean liked) {
+        var caption = getCaption(profile);
+        if (distance < 0 && !liked) {
+            return caption;
+        }
+
+        var result = new StringBuilder(caption.length() + likedPrefix.length() + 32);
+        if (liked) {
+            result.append(likedPrefix);
+        }
+        if (distance >= 0) {
+            result.append("Менее чем в ").append(distance).append(" км от тебя!\n");
+        }
+        return result.append(caption).toString();
+    }
+
+    private static String render(Profile profile) {
+        return new StringBuilder(64)
+                .append(profile.getName()).append('\n')
+                .append(profile.getCity()).append('\n')
+                .append(profile.getAge()).append('\n')
+                .append('@').append(profile.getTelegramUserName())
+                .toString();
+    }
+
+    private static class Caption {
+        final int version;
+        final String text;
+
+        Caption(int version, String text) {
+            this.version = version;
+            this.text = text;
+        }
+    }
+}
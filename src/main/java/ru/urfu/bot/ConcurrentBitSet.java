@@ -0,0 +1,96 @@
+package ru.urfu.bot;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Битсет, который можно менять и читать из разных потоков без блокировок.
+ * Слова лежат в блоках по 64 long, блоки создаются по мере роста, как массив профилей в ProfileData.
+ * Каталог блоков тоже растет по мере надобности, поэтому пустой битсет или битсет на пару профилей
+ * занимает сотни байт, а не весь каталог сразу. Новые блоки и новый каталог создаются под монитором,
+ * это бывает раз на 4096 индексов; чтение и изменение уже созданных блоков идут без блокировок
+ */
+
+public class ConcurrentBitSet {
+    private static final int chunkBits = 6;
+    private static final int chunkWords = 1 << chunkBits;
+    private static final int initialChunks = 4;
+
+    private volatile AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(initialChunks);
+    private final AtomicInteger cardinality = new AtomicInteger();
+
+    public void set(int index) {
+        var word = index >>> 6;
+        var bit = 1L << index;
+        var old = chunkOf(word).getAndAccumulate(word & (chunkWords - 1), bit, (a, b) -> a | b);
+        if ((old & bit) == 0) {
+            cardinality.incrementAndGet();
+        }
+    }
+
+    public void clear(int index) {
+        var word = index >>> 6;
+        var chunk = chunk(word >>> chunkBits);
+        if (chunk == null) {
+            return;
+        }
+        var bit = 1L << index;
+        var old = chunk.getAndAccumulate(word & (chunkWords - 1), ~bit, (a, b) -> a & b);
+        if ((old & bit) != 0) {
+            cardinality.decrementAndGet();
+        }
+    }
+
+    public boolean get(int index) {
+        return (word(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * @return true, если ни один бит не установлен
+     */
+    public boolean isEmpty() {
+        return cardinality.get() == 0;
+    }
+
+    /**
+     * @param word номер слова, биты от word * 64 до word * 64 + 63
+     * @return слово или 0, если в этой части битсета ничего не установлено
+     */
+    public long word(int word) {
+        var chunk = chunk(word >>> chunkBits);
+        return chunk == null ? 0 : chunk.get(word & (chunkWords - 1));
+    }
+
+    private AtomicLongArray chunk(int number) {
+        var directory = chunks;
+        return number < directory.length() ? directory.get(number) : null;
+    }
+
+    private AtomicLongArray chunkOf(int word) {
+        var chunk = chunk(word >>> chunkBits);
+        return chunk != null ? chunk : createChunk(word >>> chunkBits);
+    }
+
+    /**
+     * Создает блок и при необходимости увеличивает каталог. Под монитором, чтобы блок,
+     * созданный во время копирования каталога, не потерялся
+     */
+    private synchronized AtomicLongArray createChunk(int number) {
+        var directory = chunks;
+        if (number >= directory.length()) {
+            var grown = new AtomicReferenceArray<AtomicLongArray>(Math.max(number + 1, directory.length() * 2));
+            for (var i = 0; i < directory.length(); i++) {
+                grown.set(i, directory.get(i));
+            }
+            chunks = grown;
+            directory = grown;
+        }
+        var chunk = directory.get(number);
+        if (chunk == null) {
+            chunk = new AtomicLongArray(chunkWords);
+            directory.set(number, chunk);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.urfu.bot;
+
+import ru.urfu.profile.Profile;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Оценка по умолчанию: сумма трех слагаемых.
+ * Если кандидат уже лайкнул юзера, лайк в ответ сразу даст пару, поэтому такие анкеты получают самый большой вес.
+ * Близость дает от 0 до 1 (1 на нулевом расстоянии, 0.5 на 10 км), активность - от 0 до 1
+ * (1 сразу после последнего действия кандидата, вдвое меньше через сутки).
+ */
+
+public class DefaultProfileScorer implements IProfileScorer {
+    private static final double likedOwnerWeight = 3;
+    private static final double distanceWeight = 1;
+    private static final double activityWeight = 1;
+    private static final double distanceScaleKilometers = 10;
+    private static final long activityHalfLifeMillis = TimeUnit.DAYS.toMillis(1);
+
+    private final double oneKiloMeter = (1d / 40075000d) * 360d * 1000;
+    private final LongSupplier clock;
+
+    public DefaultProfileScorer() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock текущее время в миллисекундах
+     */
+    public DefaultProfileScorer(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public double score(Profile owner, Profile candidate) {
+        var score = 0d;
+        if (MatchHandler.isFirstLikesSecond(candidate, owner)) {
+            score += likedOwnerWeight;
+        }
+
+        var ownerLocation = owner.getLocation();
+        var candidateLocation = candidate.getLocation();
+        if (ownerLocation != null && candidateLocation != null) {
+            var kilometers = ownerLocation.FindDistanceTo(candidateLocation) / oneKiloMeter;
+            score += distanceWeight / (1 + kilometers / distanceScaleKilometers);
+        }
+
+        var lastActive = candidate.getLastActive();
+        if (lastActive > 0) {
+            var idle = Math.max(0, clock.getAsLong() - lastActive);
+            score += activityWeight * Math.pow(0.5, (double) idle / activityHalfLifeMillis);
+        }
+        return score;
+    }
+}
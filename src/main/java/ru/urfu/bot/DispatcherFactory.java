@@ -0,0 +1,19 @@
+package ru.urfu.bot;
+
+/**
+ * Создает диспетчер апдейтов по переменным среды
+ */
+
+public class DispatcherFactory {
+    /**
+     * Если UPDATE_EXECUTION=virtual, каждый юзер обрабатывается в своем виртуальном потоке,
+     * иначе используется пул с очередью на каждое ядро
+     * @return диспетчер
+     */
+    public static IUpdateDispatcher fromEnvironment() {
+        if ("virtual".equalsIgnoreCase(System.getenv("UPDATE_EXECUTION"))) {
+            return VirtualThreadDispatcher.create();
+        }
+        return new UpdateDispatcher();
+    }
+}
@@ -0,0 +1,16 @@
+package ru.urfu.bot;
+
+import ru.urfu.profile.Profile;
+
+/**
+ * Оценка того, насколько анкета подходит юзеру. Чем больше оценка, тем раньше анкета попадет в ленту
+ */
+
+public interface IProfileScorer {
+    /**
+     * @param owner юзер, который смотрит ленту
+     * @param candidate анкета-кандидат
+     * @return оценка
+     */
+    double score(Profile owner, Profile candidate);
+}
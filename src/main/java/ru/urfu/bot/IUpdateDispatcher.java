@@ -0,0 +1,15 @@
+package ru.urfu.bot;
+
+/**
+ * Интерфейс диспетчера, который выполняет обработку апдейтов вне потока библиотеки бота.
+ * Задачи одного юзера выполняются строго по очереди, задачи разных юзеров - параллельно
+ */
+
+public interface IUpdateDispatcher {
+    /**
+     * Ставит задачу в очередь юзера
+     * @param userId id юзера, от которого пришел апдейт
+     * @param task обработка апдейта
+     */
+    void dispatch(long userId, Runnable task);
+}
@@ -0,0 +1,316 @@
+package ru.urfu.bot;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Граф симпатий на id профилей. У каждого юзера три примитивных множества: кого он лайкнул, кто лайкнул его
+ * и взаимные симпатии, плюс счетчик полученных лайков. Взаимность записывается в момент лайка, который замыкает пару, поэтому чтение - это просто копия.
+ * Лайк стоит около 2 * 8 байт на элемент таблицы, то есть не больше 48 байт с учетом запаса таблиц.
+ * Изменения защищены полосатыми блокировками: лайк берет блокировки полос обоих юзеров,
+ * поэтому оба направления меняются атомарно, а чтение под блокировкой полосы юзера дает согласованный снимок.
+ */
+public class LikeGraph {
+    private static final int stripesCount = 64;
+
+    private final Object[] stripes = new Object[stripesCount];
+    private final Map<Long, Node> nodes = new ConcurrentHashMap<>();
+
+    public LikeGraph() {
+        for (var i = 0; i < stripesCount; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Результат лайка
+     */
+    public enum LikeResult {
+        alreadyLiked,
+        liked,
+        matched
+    }
+
+    /**
+     * Добавляет лайк
+     * @param liker кто лайкнул
+     * @param liked кого лайкнули
+     * @return matched, если лайк замкнул взаимную пару, alreadyLiked, если лайк уже был
+     */
+    public LikeResult like(long liker, long liked) {
+        var likerNode = nodeOf(liker);
+        var likedNode = nodeOf(liked);
+        var a = stripeIndex(liker);
+        var b = stripeIndex(liked);
+        synchronized (stripes[Math.min(a, b)]) {
+            synchronized (stripes[Math.max(a, b)]) {
+                if (!likerNode.likesTo.add(liked)) {
+                    return LikeResult.alreadyLiked;
+                }
+                likedNode.likedBy.add(liker);
+                likedNode.incoming++;
+                if (likedNode.likesTo.contains(liker)) {
+                    likerNode.mutual.add(liked);
+                    likedNode.mutual.add(liker);
+                    return LikeResult.matched;
+                }
+                return LikeResult.liked;
+            }
+        }
+    }
+
+    /**
+     * Убирает лайк
+     * @param liker кто лайкнул
+     * @param liked кого лайкнули
+     * @return true, если лайк был
+     */
+    public boolean unlike(long liker, long liked) {
+        var likerNode = nodes.get(liker);
+        var likedNode = nodes.get(liked);
+        if (likerNode == null || likedNode == null) {
+            return false;
+        }
+        var a = stripeIndex(liker);
+        var b = stripeIndex(liked);
+        synchronized (stripes[Math.min(a, b)]) {
+            synchronized (stripes[Math.max(a, b)]) {
+                if (!likerNode.likesTo.remove(liked)) {
+                    return false;
+                }
+                likedNode.likedBy.remove(liker);
+                likerNode.mutual.remove(liked);
+                likedNode.mutual.remove(liker);
+                return true;
+            }
+        }
+    }
+
+    public boolean likes(long first, long second) {
+        var node = nodes.get(first);
+        if (node == null) {
+            return false;
+        }
+        synchronized (stripes[stripeIndex(first)]) {
+            return node.likesTo.contains(second);
+        }
+    }
+
+    /**
+     * @return снимок id тех, кого лайкнул юзер
+     */
+    public long[] likesTo(long id) {
+        var node = nodes.get(id);
+        if (node == null) {
+            return new long[0];
+        }
+        synchronized (stripes[stripeIndex(id)]) {
+            return node.likesTo.toArray();
+        }
+    }
+
+    /**
+     * @return снимок id тех, кто лайкнул юзера
+     */
+    public long[] likedBy(long id) {
+        var node = nodes.get(id);
+        if (node == null) {
+            return new long[0];
+        }
+        synchronized (stripes[stripeIndex(id)]) {
+            return node.likedBy.toArray();
+        }
+    }
+
+    /**
+     * @return снимок id тех, кто лайкнул юзера, но еще не стал взаимной симпатией
+     */
+    public long[] pending(long id) {
+        var node = nodes.get(id);
+        if (node == null) {
+            return new long[0];
+        }
+        synchronized (stripes[stripeIndex(id)]) {
+            var pending = new long[node.likedBy.size() - node.mutual.size()];
+            var count = new int[1];
+            node.likedBy.forEach(liker -> {
+                if (!node.mutual.contains(liker)) {
+                    pending[count[0]++] = liker;
+                }
+            });
+            return pending;
+        }
+    }
+
+    /**
+     * @return сколько лайков юзер получил за все время, отозванные тоже считаются
+     */
+    public int incomingCount(long id) {
+        var node = nodes.get(id);
+        if (node == null) {
+            return 0;
+        }
+        synchronized (stripes[stripeIndex(id)]) {
+            return node.incoming;
+        }
+    }
+
+    /**
+     * @return снимок id взаимных симпатий юзера
+     */
+    public long[] mutual(long id) {
+        var node = nodes.get(id);
+        if (node == null) {
+            return new long[0];
+        }
+        synchronized (stripes[stripeIndex(id)]) {
+            return node.mutual.toArray();
+        }
+    }
+
+    /**
+     * Списки симпатий юзера, которые можно листать постранично
+     */
+    public enum LikeList {
+        likesTo,
+        likedBy,
+        mutual
+    }
+
+    /**
+     * Возвращает страницу списка симпатий: не больше limit наименьших id, которые больше cursor.
+     * Список проходится один раз с кучей размера limit, поэтому память не зависит от числа лайков,
+     * а лайки, поставленные между запросами страниц, не сдвигают уже показанные
+     * @param id юзер
+     * @param list какой список листать
+     * @param cursor последний id предыдущей страницы или Long.MIN_VALUE для первой страницы
+     * @param limit размер страницы
+     * @return id по возрастанию
+     */
+    public long[] page(long id, LikeList list, long cursor, int limit) {
+        var node = nodes.get(id);
+        if (node == null || limit <= 0) {
+            return new long[0];
+        }
+        var collector = new PageCollector(cursor, limit);
+        synchronized (stripes[stripeIndex(id)]) {
+            switch (list) {
+                case likesTo:
+                    node.likesTo.forEach(collector);
+                    break;
+                case likedBy:
+                    node.likedBy.forEach(collector);
+                    break;
+                case mutual:
+                    node.mutual.forEach(collector);
+                    break;
+            }
+        }
+        return collector.toSortedArray();
+    }
+
+    /**
+     * @return количество взаимных симпатий юзера
+     */
+    public int mutualCount(long id) {
+        var node = nodes.get(id);
+        if (node == null) {
+            return 0;
+        }
+        synchronized (stripes[stripeIndex(id)]) {
+            return node.mutual.size();
+        }
+    }
+
+    /**
+     * @return сколько байт занимают таблицы смежности всех юзеров
+     */
+    public long adjacencyBytes() {
+        var bytes = 0L;
+        for (var entry : nodes.entrySet()) {
+            synchronized (stripes[stripeIndex(entry.getKey())]) {
+                var node = entry.getValue();
+                bytes += node.likesTo.tableBytes() + node.likedBy.tableBytes() + node.mutual.tableBytes();
+            }
+        }
+        return bytes;
+    }
+
+    public void clear() {
+        nodes.clear();
+    }
+
+    private Node nodeOf(long id) {
+        return nodes.computeIfAbsent(id, key -> new Node());
+    }
+
+    private static int stripeIndex(long id) {
+        var hash = Long.hashCode(id);
+        return (hash ^ (hash >>> 16)) & (stripesCount - 1);
+    }
+
+    /**
+     * Собирает limit наименьших id больше курсора в кучу с максимумом в корне
+     */
+    private static class PageCollector implements LongConsumer {
+        private final long cursor;
+        private final long[] heap;
+        private int size;
+
+        PageCollector(long cursor, int limit) {
+            this.cursor = cursor;
+            this.heap = new long[limit];
+        }
+
+        @Override
+        public void accept(long value) {
+            if (value <= cursor) {
+                return;
+            }
+            if (size < heap.length) {
+                var index = size++;
+                while (index > 0 && heap[(index - 1) / 2] < value) {
+                    heap[index] = heap[(index - 1) / 2];
+                    index = (index - 1) / 2;
+                }
+                heap[index] = value;
+            } else if (value < heap[0]) {
+                siftDown(value);
+            }
+        }
+
+        private void siftDown(long value) {
+            var index = 0;
+            while (true) {
+                var child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] > heap[child]) {
+                    child++;
+                }
+                if (heap[child] <= value) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = value;
+        }
+
+        long[] toSortedArray() {
+            var result = Arrays.copyOf(heap, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    private static class Node {
+        final LongSet likesTo = new LongSet();
+        final LongSet likedBy = new LongSet();
+        final LongSet mutual = new LongSet();
+        int incoming;
+    }
+}
@@ -0,0 +1,187 @@
+package ru.urfu.bot;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Множество примитивных long на открытой адресации с линейным пробированием.
+ * Хранит только массив long, без объектов-оберток, поэтому элемент занимает от 10 до 21 байта.
+ * Пустое множество не занимает таблицу, она создается при первом добавлении.
+ * Не потокобезопасно, синхронизацию обеспечивает владелец.
+ */
+public class LongSet {
+    private static final long EMPTY = 0;
+    private static final int minCapacity = 4;
+    private static final long[] noTable = new long[0];
+
+    private long[] table;
+    private int size;
+    private boolean hasEmptyValue;
+
+    public LongSet() {
+        table = noTable;
+    }
+
+    /**
+     * Добавляет значение
+     * @param value значение
+     * @return true, если значения еще не было
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (hasEmptyValue) {
+                return false;
+            }
+            hasEmptyValue = true;
+            size++;
+            return true;
+        }
+
+        if (table.length == 0) {
+            table = new long[minCapacity];
+        }
+        var mask = table.length - 1;
+        var i = slotOf(value, mask);
+        while (table[i] != EMPTY) {
+            if (table[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = value;
+        size++;
+        if (slotsUsed() * 4 >= table.length * 3) {
+            resize(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Удаляет значение, сдвигая следующие элементы цепочки назад
+     * @param value значение
+     * @return true, если значение было
+     */
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!hasEmptyValue) {
+                return false;
+            }
+            hasEmptyValue = false;
+            size--;
+            return true;
+        }
+
+        var mask = table.length - 1;
+        var i = indexOf(value, mask);
+        if (i < 0) {
+            return false;
+        }
+
+        var j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == EMPTY) {
+                break;
+            }
+            var home = slotOf(table[j], mask);
+            var stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stays) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return hasEmptyValue;
+        }
+        return indexOf(value, table.length - 1) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        table = noTable;
+        size = 0;
+        hasEmptyValue = false;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        if (hasEmptyValue) {
+            consumer.accept(EMPTY);
+        }
+        for (var value : table) {
+            if (value != EMPTY) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    public long[] toArray() {
+        var result = new long[size];
+        var i = 0;
+        if (hasEmptyValue) {
+            result[i++] = EMPTY;
+        }
+        for (var value : table) {
+            if (value != EMPTY) {
+                result[i++] = value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return сколько байт занимает таблица множества
+     */
+    public long tableBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    private int indexOf(long value, int mask) {
+        if (table.length == 0) {
+            return -1;
+        }
+        var i = slotOf(value, mask);
+        while (table[i] != EMPTY) {
+            if (table[i] == value) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slotsUsed() {
+        return hasEmptyValue ? size - 1 : size;
+    }
+
+    private void resize(int capacity) {
+        var old = table;
+        table = new long[capacity];
+        var mask = capacity - 1;
+        for (var value : old) {
+            if (value != EMPTY) {
+                var i = slotOf(value, mask);
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = value;
+            }
+        }
+    }
+
+    private static int slotOf(long value, int mask) {
+        var hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -3,53 +3,87 @@ package ru.urfu.bot;
 import ru.urfu.profile.Profile;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Тут хранится информация о симпатиях
+ * Тут хранится информация о симпатиях.
+ * Сами симпатии лежат в LikeGraph в виде id, а профили достаются по id из реестра.
+ * Входящие лайки без ответа отдельно не хранятся, а считаются по графу, когда их спрашивает селектор.
  */
 public class MatchHandler {
-    public static final Map<Profile, Set<Profile>> likesTo = new HashMap<>();
-    public static final Map<Profile, Set<Profile>> likedBy = new HashMap<>();
+    private static final LikeGraph graph = new LikeGraph();
+    private static final Map<Long, Profile> profiles = new ConcurrentHashMap<>();
+
+    /**
+     * Кого лайкнул каждый юзер. Только для чтения: значения - снимки, собранные по графу при обращении,
+     * а put и remove бросают UnsupportedOperationException. Менять симпатии нужно через likeProfile и unlikeProfile
+     */
+    public static final Map<Profile, Set<Profile>> likesTo = new LikesView(false);
+
+    /**
+     * Кто лайкнул каждого юзера. Только для чтения, как и likesTo
+     */
+    public static final Map<Profile, Set<Profile>> likedBy = new LikesView(true);
 
     /**
      * Получаем профили, которые понравились юзеру
      * @param user юзер
-     * @return профили
+     * @return снимок профилей
      */
     public static Set<Profile> getLikesByUser(Profile user) {
-        return likesTo.get(user);
+        return toProfiles(graph.likesTo(user.ID));
     }
 
     /**
      * Получаем профили, которым понравился юзер
      * @param profile юзер
-     * @return профили
+     * @return снимок профилей
      */
     public static Set<Profile> getWhoLikedUser(Profile profile) {
-        return likedBy.get(profile);
+        return toProfiles(graph.likedBy(profile.ID));
     }
 
     /**
      * Добавляем информацию о том, кого лайкнул юзер
      * @param liker юзер
      * @param liked кого лайкнул юзер
+     * @return true, если этот лайк сделал симпатию взаимной
      */
-    public static void likeProfile(Profile liker, Profile liked) {
-        AddInListOrCreate(likesTo, liker, liked);
-        AddInListOrCreate(likedBy, liked, liker);
+    public static boolean likeProfile(Profile liker, Profile liked) {
+        profiles.putIfAbsent(liker.ID, liker);
+        profiles.putIfAbsent(liked.ID, liked);
+        return graph.like(liker.ID, liked.ID) == LikeGraph.LikeResult.matched;
     }
 
     /**
-     * Добавляем юзера в коллекции
+     * Убираем лайк юзера
+     * @param liker юзер
+     * @param liked кого лайкнул юзер
+     */
+    public static void unlikeProfile(Profile liker, Profile liked) {
+        graph.unlike(liker.ID, liked.ID);
+    }
+
+    /**
+     * Добавляем юзера в реестр профилей. Узел в графе симпатий появится с его первым лайком,
+     * поэтому восстановление профилей без лайков не создает пустые таблицы
      * @param profile юзер
      */
     public static void addUser(Profile profile) {
         if (!"".equals(profile.getName())) {
-            likesTo.put(profile, new HashSet<>());
-            likedBy.put(profile, new HashSet<>());
+            profiles.put(profile.ID, profile);
         }
     }
 
+    /**
+     * Проверяем, знает ли хранилище симпатий о юзере
+     * @param profile юзер
+     * @return результат
+     */
+    public static boolean containsUser(Profile profile) {
+        return profiles.containsKey(profile.ID);
+    }
+
     /**
      * Проверяем, нравится ли первому юзеру второй
      * @param first первый юзер
@@ -57,11 +91,7 @@ public class MatchHandler {
      * @return результат
      */
     public static boolean isFirstLikesSecond(Profile first, Profile second) {
-        try {
-            return likesTo.get(first).contains(second);
-        } catch (Exception e) {
-            return false;
-        }
+        return graph.likes(first.ID, second.ID);
     }
 
     /**
@@ -70,24 +100,137 @@ public class MatchHandler {
      * @return список анкет
      */
     public static Set<Profile> getMutualLikes(Profile profile) {
-        HashSet<Profile> set = new HashSet<>();
-        var likesBy = likedBy.get(profile);
-        for (Profile p : likesTo.get(profile)) {
-            if (likesBy.contains(p)) {
-                set.add(p);
+        return toProfiles(graph.mutual(profile.ID));
+    }
+
+    /**
+     * Возвращаем страницу списка симпатий юзера
+     * @param profile юзер
+     * @param list какой список листать
+     * @param cursor id последнего профиля предыдущей страницы или Long.MIN_VALUE для первой страницы
+     * @param limit размер страницы
+     * @return профили по возрастанию id
+     */
+    public static List<Profile> getPage(Profile profile, LikeGraph.LikeList list, long cursor, int limit) {
+        var ids = graph.page(profile.ID, list, cursor, limit);
+        var page = new ArrayList<Profile>(ids.length);
+        for (var id : ids) {
+            var other = profiles.get(id);
+            if (other != null) {
+                page.add(other);
             }
         }
-        return set;
+        return page;
     }
 
     /**
-     * Обновляем или создаем информацию о лайке
-     * @param map где обновляем или создаем
+     * Возвращаем id тех, кто лайкнул юзера, а юзер им пока не ответил
+     * @param profile юзер
+     * @return снимок id
+     */
+    public static long[] getPendingLikers(Profile profile) {
+        return graph.pending(profile.ID);
+    }
+
+    /**
+     * Возвращаем счетчик входящих лайков юзера. Он растет с каждым новым лайком,
+     * поэтому по нему селектор понимает, что список ожидающих ответа пора пересчитать
+     * @param profile юзер
+     * @return счетчик
      */
-    private static void AddInListOrCreate(Map<Profile, Set<Profile>> map, Profile keyProfile, Profile valueProfile) {
-        if (!map.containsKey(keyProfile)) {
-            map.put(keyProfile, new HashSet<>());
+    public static int getIncomingLikeCount(Profile profile) {
+        return graph.incomingCount(profile.ID);
+    }
+
+    /**
+     * Возвращаем количество взаимных симпатий юзера
+     * @param profile юзер
+     * @return количество
+     */
+    public static int getMutualCount(Profile profile) {
+        return graph.mutualCount(profile.ID);
+    }
+
+    /**
+     * @return граф симпатий
+     */
+    public static LikeGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Очищаем всю информацию о симпатиях
+     */
+    public static void clear() {
+        graph.clear();
+        profiles.clear();
+    }
+
+    /**
+     * Представление симпатий в виде старых карт профиль - множество профилей. Ключи - юзеры из реестра
+     */
+    private static class LikesView extends AbstractMap<Profile, Set<Profile>> {
+        private final boolean incoming;
+
+        LikesView(boolean incoming) {
+            this.incoming = incoming;
         }
-        map.get(keyProfile).add(valueProfile);
+
+        @Override
+        public Set<Profile> get(Object key) {
+            if (!containsKey(key)) {
+                return null;
+            }
+            var id = ((Profile) key).ID;
+            return Collections.unmodifiableSet(toProfiles(incoming ? graph.likedBy(id) : graph.likesTo(id)));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Profile && profiles.containsKey(((Profile) key).ID);
+        }
+
+        @Override
+        public int size() {
+            return profiles.size();
+        }
+
+        @Override
+        public Set<Entry<Profile, Set<Profile>>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Profile, Set<Profile>>> iterator() {
+                    var users = profiles.values().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return users.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Profile, Set<Profile>> next() {
+                            var user = users.next();
+                            return new SimpleImmutableEntry<>(user, get(user));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return profiles.size();
+                }
+            };
+        }
+    }
+
+    private static Set<Profile> toProfiles(long[] ids) {
+        var set = new HashSet<Profile>(ids.length * 2);
+        for (var id : ids) {
+            var profile = profiles.get(id);
+            if (profile != null) {
+                set.add(profile);
+            }
+        }
+        return set;
     }
 }
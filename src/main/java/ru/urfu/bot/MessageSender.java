@@ -1,26 +1,59 @@
 package ru.urfu.bot;
 
 import ru.urfu.bot.keyboards.IKeyboard;
+import ru.urfu.bot.keyboards.Keyboards;
+import ru.urfu.bot.metrics.Metrics;
+import ru.urfu.bot.metrics.Stage;
+import ru.urfu.bot.outbound.OutboundMessage;
+import ru.urfu.bot.outbound.OutboundQueue;
+import ru.urfu.bot.photos.PhotoCache;
 import ru.urfu.discord.DiscordMessageSender;
 import ru.urfu.profile.Profile;
 import ru.urfu.telegram.TelegramMessageSender;
+import ru.urfu.telegram.TelegramPhotoLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Класс, отправляющий сообщения в разные источники
+ * Класс, отправляющий сообщения в разные источники.
+ * Сообщения не отправляются сразу, а ставятся в очередь платформы, которая соблюдает ее ограничения на частоту
  */
 public class MessageSender {
+    private static final PhotoCache photoCache = PhotoCache.fromEnvironment();
+    private static OutboundQueue telegramQueue = OutboundQueue.telegram(new TelegramMessageSender(photoCache));
+    private static OutboundQueue discordQueue = OutboundQueue.discord(
+            new DiscordMessageSender(photoCache, new TelegramPhotoLoader()));
+
+    /**
+     * Подменяет очереди платформ, например на очереди с заглушкой вместо настоящей отправки
+     * @param telegram очередь для Telegram
+     * @param discord очередь для Discord
+     */
+    public static void useQueues(OutboundQueue telegram, OutboundQueue discord) {
+        telegramQueue = telegram;
+        discordQueue = discord;
+    }
+
     /**
      * Отправляет простое сообщение
      * @param message текст
      * @param update апдейт куда отправлять
+     * @return завершается, когда сообщение доставлено
      */
-    public static void sendMessage(String message, IUpdate update) {
-        if (update.isFromTelegram()) {
-            TelegramMessageSender.sendMessage(update.getMessage().getChatId().toString(), message);
-        }
-        else {
-            DiscordMessageSender.sendMessage(update.getMessage().getChatId(), message);
-        }
+    public static CompletableFuture<Void> sendMessage(String message, IUpdate update) {
+        return submit(OutboundMessage.text(update.getMessage().getChatId(), message, null), update.isFromTelegram());
+    }
+
+    /**
+     * Отправляет простое сообщение юзеру в его чат, а не в чат, откуда пришел апдейт
+     * @param message текст
+     * @param profile кому отправлять
+     * @return завершается, когда сообщение доставлено
+     */
+    public static CompletableFuture<Void> sendMessage(String message, Profile profile) {
+        return submit(OutboundMessage.text(profile.ID, message, null), profile.isFromTelegram());
     }
 
     /**
@@ -28,15 +61,10 @@ public class MessageSender {
      * @param text текст
      * @param keyboard клавиатура
      * @param update апдейт куда отправлять
+     * @return завершается, когда сообщение доставлено
      */
-    public static void sendMessageWithKeyboard(String text, IKeyboard keyboard, IUpdate update) {
-        if (update.isFromTelegram()) {
-            TelegramMessageSender.sendMessageWithKeyboard(update.getMessage().getChatId().toString(), text, keyboard.getTelegramKeyboard());
-        } else {
-            var discordKeyboard = keyboard.getDiscordKeyboard().getKeyboard();
-            var result = text + '\n' + discordKeyboard;
-            DiscordMessageSender.sendMessage(update.getMessage().getChatId(), result);
-        }
+    public static CompletableFuture<Void> sendMessageWithKeyboard(String text, IKeyboard keyboard, IUpdate update) {
+        return submit(OutboundMessage.text(update.getMessage().getChatId(), text, keyboard), update.isFromTelegram());
     }
 
     /**
@@ -44,12 +72,51 @@ public class MessageSender {
      * @param update апдейт куда отправлять
      * @param profile профиль, фото которого мы отправляем
      * @param caption подпись
+     * @return завершается, когда сообщение доставлено
      */
-    public static void sendPhotoWithCaption(IUpdate update, Profile profile, String caption) {
-        if (update.isFromTelegram()) {
-            TelegramMessageSender.sendPhotoWithCaption(update, profile, caption);
-        } else {
-            DiscordMessageSender.sendPhoto(update.getMessage().getChatId(), caption, profile.getPhotoLink());
+    public static CompletableFuture<Void> sendPhotoWithCaption(IUpdate update, Profile profile, String caption) {
+        var chatId = update.getMessage().getChatId();
+        if (profile.ID == -1) {
+            return submit(OutboundMessage.text(chatId,
+                    "Ты долистал анкеты до конца! Начинаем по второму кругу.", Keyboards.main), update.isFromTelegram());
+        }
+        return submit(OutboundMessage.photo(chatId, profile.getPhotoLink(), caption, Keyboards.main), update.isFromTelegram());
+    }
+
+    /**
+     * Отправляет фото профилей альбомами по 10 штук, каждое фото со своей подписью
+     * @param update апдейт куда отправлять
+     * @param profiles профили, фото которых мы отправляем
+     * @param captions подписи в том же порядке
+     * @return завершается, когда доставлены все альбомы
+     */
+    public static CompletableFuture<Void> sendPhotosWithCaptions(IUpdate update, List<Profile> profiles, List<String> captions) {
+        var chatId = update.getMessage().getChatId();
+        var albums = new ArrayList<CompletableFuture<Void>>();
+        for (var from = 0; from < profiles.size(); from += OutboundMessage.maxAlbumSize) {
+            var to = Math.min(profiles.size(), from + OutboundMessage.maxAlbumSize);
+            var links = new ArrayList<String>(to - from);
+            for (var profile : profiles.subList(from, to)) {
+                links.add(profile.getPhotoLink());
+            }
+            albums.add(submit(OutboundMessage.album(chatId, links, captions.subList(from, to)), update.isFromTelegram()));
+        }
+        return CompletableFuture.allOf(albums.toArray(new CompletableFuture[0]));
+    }
+
+    private static CompletableFuture<Void> submit(OutboundMessage message, boolean telegram) {
+        var start = Metrics.start();
+        var future = telegram ? telegramQueue.submit(message) : discordQueue.submit(message);
+        if (Metrics.enabled) {
+            var kind = message.isAlbum() ? "album" : message.hasPhoto() ? "photo" : "text";
+            future.whenComplete((result, error) -> {
+                if (error != null) {
+                    Metrics.fail(Stage.send, telegram, kind);
+                } else {
+                    Metrics.record(Stage.send, telegram, kind, start);
+                }
+            });
         }
+        return future;
     }
 }
@@ -0,0 +1,202 @@
+package ru.urfu.bot;
+
+import ru.urfu.profile.Gender;
+import ru.urfu.profile.Profile;
+import ru.urfu.profile.SearchPreferences;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Вторичный индекс профилей для поиска по предпочтениям: битсеты по полу, по корзинам возраста в 5 лет и по городу.
+ * Биты стоят на плотных индексах профилей из ProfileData. Лента по предпочтениям - это пересечение битсетов
+ * по 64 профиля за раз, а не проверка каждого профиля.
+ * Корзины возраста грубее диапазона, поэтому найденный профиль нужно проверить через SearchPreferences.matches
+ */
+
+public class PreferenceIndex {
+    private static final int ageBucketYears = 5;
+    private static final int chunkBits = 12;
+    private static final int chunkSize = 1 << chunkBits;
+    private static final int maxChunks = 1 << 16;
+
+    private final Map<Gender, ConcurrentBitSet> byGender = new EnumMap<>(Gender.class);
+    private final Map<Integer, ConcurrentBitSet> byAgeBucket = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentBitSet> byCity = new ConcurrentHashMap<>();
+    private final Map<String, String> cityKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Что сейчас записано в индекс для каждого плотного индекса, чтобы снять старые биты при изменении профиля.
+     * Индексы плотные, поэтому записи лежат в массиве из блоков, как профили в ProfileData, а не в таблице с ключами
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<Posting>> postings = new AtomicReferenceArray<>(maxChunks);
+
+    public PreferenceIndex() {
+        for (var gender : Gender.values()) {
+            byGender.put(gender, new ConcurrentBitSet());
+        }
+    }
+
+    /**
+     * Записывает профиль в индекс. Для одного индекса вызывается не параллельно
+     * @param index плотный индекс профиля
+     * @param profile профиль
+     */
+    public void update(int index, Profile profile) {
+        var posting = new Posting(profile.getGender(), profile.getAge() / ageBucketYears, canonicalCity(profile.getCityKey()));
+        var old = postingsOf(index).getAndSet(index & (chunkSize - 1), posting);
+        if (posting.equals(old)) {
+            return;
+        }
+        if (old != null) {
+            if (old.gender != null) {
+                byGender.get(old.gender).clear(index);
+            }
+            byAgeBucket.computeIfPresent(old.ageBucket, (bucket, set) -> without(set, index));
+            byCity.computeIfPresent(old.city, (city, set) -> {
+                var rest = without(set, index);
+                if (rest == null) {
+                    cityKeys.remove(city);
+                }
+                return rest;
+            });
+        }
+        if (posting.gender != null) {
+            byGender.get(posting.gender).set(index);
+        }
+        byAgeBucket.compute(posting.ageBucket, (bucket, set) -> with(set, index));
+        byCity.compute(posting.city, (city, set) -> with(set, index));
+    }
+
+    /**
+     * Возвращает блок записей, в котором лежит индекс, и создает его при необходимости
+     */
+    private AtomicReferenceArray<Posting> postingsOf(int index) {
+        var number = index >>> chunkBits;
+        var chunk = postings.get(number);
+        if (chunk == null) {
+            postings.compareAndSet(number, null, new AtomicReferenceArray<>(chunkSize));
+            chunk = postings.get(number);
+        }
+        return chunk;
+    }
+
+    /**
+     * Ставит бит в битсет значения, создавая битсет для нового значения.
+     * Вызывается внутри compute, поэтому не пересекается с удалением опустевшего битсета того же значения
+     */
+    private static ConcurrentBitSet with(ConcurrentBitSet set, int index) {
+        var result = set == null ? new ConcurrentBitSet() : set;
+        result.set(index);
+        return result;
+    }
+
+    /**
+     * Снимает бит. Города вводятся свободным текстом, поэтому битсеты значений, у которых не осталось профилей,
+     * удаляются, а не копятся
+     * @return битсет или null, если он опустел
+     */
+    private static ConcurrentBitSet without(ConcurrentBitSet set, int index) {
+        set.clear(index);
+        return set.isEmpty() ? null : set;
+    }
+
+    /**
+     * Городов намного меньше, чем профилей, поэтому все записи индекса делят одну строку на город
+     */
+    private String canonicalCity(String city) {
+        var canonical = cityKeys.putIfAbsent(city, city);
+        return canonical == null ? city : canonical;
+    }
+
+    /**
+     * @return для скольких городов сейчас есть битсеты
+     */
+    int getCityCount() {
+        return byCity.size();
+    }
+
+    /**
+     * Ищет ближайший индекс, который проходит по полу, корзине возраста и городу
+     * @param preferences предпочтения, хотя бы одно ограничение
+     * @param from с какого индекса искать
+     * @param size сколько всего индексов
+     * @return индекс или -1, если дальше подходящих нет
+     */
+    public int nextMatch(SearchPreferences preferences, int from, int size) {
+        var gender = preferences.getGender() == null ? null : byGender.get(preferences.getGender());
+        var city = preferences.getCity() == null ? null : byCity.get(SearchPreferences.cityKey(preferences.getCity()));
+        if (preferences.getCity() != null && city == null) {
+            return -1;
+        }
+
+        ConcurrentBitSet[] ages = null;
+        if (preferences.hasAgeRange()) {
+            var matching = new ArrayList<ConcurrentBitSet>();
+            var minBucket = preferences.getMinAge() / ageBucketYears;
+            var maxBucket = preferences.getMaxAge() / ageBucketYears;
+            for (var entry : byAgeBucket.entrySet()) {
+                if (entry.getKey() >= minBucket && entry.getKey() <= maxBucket) {
+                    matching.add(entry.getValue());
+                }
+            }
+            if (matching.isEmpty()) {
+                return -1;
+            }
+            ages = matching.toArray(new ConcurrentBitSet[0]);
+        }
+
+        var lastWord = (size - 1) >>> 6;
+        for (var word = from >>> 6; from < size && word <= lastWord; word++) {
+            var mask = word == from >>> 6 ? -1L << (from & 63) : -1L;
+            if (gender != null) {
+                mask &= gender.word(word);
+            }
+            if (city != null) {
+                mask &= city.word(word);
+            }
+            if (ages != null && mask != 0) {
+                var ageMask = 0L;
+                for (var age : ages) {
+                    ageMask |= age.word(word);
+                }
+                mask &= ageMask;
+            }
+            if (mask != 0) {
+                var index = (word << 6) + Long.numberOfTrailingZeros(mask);
+                return index < size ? index : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Значения профиля, записанные в индекс
+     */
+    private static class Posting {
+        final Gender gender;
+        final int ageBucket;
+        final String city;
+
+        Posting(Gender gender, int ageBucket, String city) {
+            this.gender = gender;
+            this.ageBucket = ageBucket;
+            this.city = city;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Posting)) return false;
+            var that = (Posting) o;
+            return gender == that.gender && ageBucket == that.ageBucket && city.equals(that.city);
+        }
+
+        @Override
+        public int hashCode() {
+            return city.hashCode() * 31 + ageBucket;
+        }
+    }
+}
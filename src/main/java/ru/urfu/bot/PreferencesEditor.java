@@ -0,0 +1,143 @@
+package ru.urfu.bot;
+
+import ru.urfu.bot.keyboards.Keyboards;
+import ru.urfu.profile.Gender;
+import ru.urfu.profile.SearchPreferences;
+
+/**
+ * Диалог настройки предпочтений поиска: пол, возраст, город.
+ * Черновик хранится в сессии юзера, сохраняются предпочтения только после последнего шага.
+ */
+
+public class PreferencesEditor {
+    private final ProfileData profileData;
+
+    public PreferencesEditor(ProfileData profileData) {
+        this.profileData = profileData;
+    }
+
+    /**
+     * Начинает настройку
+     * @param update апдейт
+     * @param session сессия юзера
+     */
+    public void start(IUpdate update, UserSession session) {
+        session.setPreferencesDraft(new Draft());
+        session.setKeyboard(Keyboards.preferredGenders);
+        MessageSender.sendMessageWithKeyboard("Кого тебе показывать?", Keyboards.preferredGenders, update);
+    }
+
+    /**
+     * Обрабатывает ответ на текущий шаг
+     * @param update апдейт
+     * @param session сессия юзера
+     * @return true, если предпочтения сохранены и настройка закончена
+     */
+    public boolean handle(IUpdate update, UserSession session) {
+        var draft = session.getPreferencesDraft();
+        var text = session.getKeyboard().getCommand(update.getMessage().getText()).trim();
+
+        switch (draft.step) {
+            case gender:
+                if (!parseGender(text, draft)) {
+                    MessageSender.sendMessageWithKeyboard("Выбери кнопкой, кого показывать", Keyboards.preferredGenders, update);
+                    return false;
+                }
+                draft.step = Step.age;
+                session.setKeyboard(Keyboards.anyValue);
+                MessageSender.sendMessageWithKeyboard("Какой возраст? Напиши, например, 18-25", Keyboards.anyValue, update);
+                return false;
+
+            case age:
+                if (!parseAge(text, draft)) {
+                    MessageSender.sendMessageWithKeyboard(
+                            "Не понял возраст. Напиши одно число или диапазон, например 18-25", Keyboards.anyValue, update);
+                    return false;
+                }
+                draft.step = Step.city;
+                MessageSender.sendMessageWithKeyboard("Из какого города?", Keyboards.anyValue, update);
+                return false;
+
+            default:
+                var city = isAny(text) ? null : text;
+                var preferences = new SearchPreferences(draft.gender, draft.minAge, draft.maxAge, city);
+                profileData.updatePreferences(session.getOwner(), preferences.isAny() ? SearchPreferences.any : preferences);
+                session.getSelector().restart();
+                session.setPreferencesDraft(null);
+                session.setInAdditionalMenu(false);
+                session.setKeyboard(Keyboards.main);
+                MessageSender.sendMessageWithKeyboard("Фильтры сохранены! Возвращаемся к просмотру анкет", Keyboards.main, update);
+                return true;
+        }
+    }
+
+    private static boolean parseGender(String text, Draft draft) {
+        switch (text) {
+            case "Парней":
+                draft.gender = Gender.male;
+                return true;
+            case "Девушек":
+                draft.gender = Gender.female;
+                return true;
+            case "Non-Binary":
+                draft.gender = Gender.other;
+                return true;
+            case "Всех":
+                draft.gender = null;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Понимает "Любой", одно число или диапазон через дефис
+     * @return false, если возраст не распознан или меньше 10 лет
+     */
+    static boolean parseAge(String text, Draft draft) {
+        if (isAny(text)) {
+            draft.minAge = 0;
+            draft.maxAge = Integer.MAX_VALUE;
+            return true;
+        }
+        var parts = text.split("-");
+        if (parts.length > 2) {
+            return false;
+        }
+        try {
+            var min = Integer.parseInt(parts[0].trim());
+            var max = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : min;
+            if (min < 10 || max < min) {
+                return false;
+            }
+            draft.minAge = min;
+            draft.maxAge = max;
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isAny(String text) {
+        return text.equalsIgnoreCase("Любой");
+    }
+
+    /**
+     * Шаги настройки
+     */
+    enum Step {
+        gender,
+        age,
+        city
+    }
+
+    /**
+     * Предпочтения, которые юзер еще не закончил настраивать
+     */
+    public static class Draft {
+        Step step = Step.gender;
+        Gender gender;
+        int minAge;
+        int maxAge = Integer.MAX_VALUE;
+    }
+}
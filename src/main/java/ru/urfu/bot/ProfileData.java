@@ -1,34 +1,70 @@
 package ru.urfu.bot;
 
+import ru.urfu.bot.locations.ILocation;
 import ru.urfu.bot.locations.LocationData;
+import ru.urfu.bot.storage.IStorage;
+import ru.urfu.bot.storage.IStorageListener;
+import ru.urfu.bot.storage.MemoryStorage;
 import ru.urfu.profile.Profile;
+import ru.urfu.profile.SearchPreferences;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 /**
  * Класс хранилище профилей, реализованный в виде Map для рандомной селекции.
+ * Каждому профилю выдается плотный индекс (0, 1, 2...), по которому селекторы ведут свой курсор.
+ * Все изменения профилей и лайки записываются в хранилище, из которого их можно восстановить после перезапуска.
+ * Апдейты разных юзеров обрабатываются параллельно и без блокировок: индекс выдается атомарным счетчиком
+ * при первом добавлении id, а профили по индексам лежат в массиве из блоков, которые создаются по мере роста.
  */
 
 public class ProfileData {
+    private static final int chunkBits = 12;
+    private static final int chunkSize = 1 << chunkBits;
+    private static final int maxChunks = 1 << 16;
 
-    public int Count = 0;
+    private static final int minMapCapacity = 16;
 
-    private final Map<Long, Profile> profileList = new ConcurrentHashMap<>();
+    private final Map<Long, Profile> profileList;
 
-    private final Map<Profile, ProfileSelector> selectorMap = new HashMap<>();
+    private final Map<Long, Integer> indexById;
 
-    public ProfileSelector getProfileSelector(Profile profile){
-        return selectorMap.get(profile);
-    }
+    private final AtomicReferenceArray<AtomicReferenceArray<Profile>> chunks = new AtomicReferenceArray<>(maxChunks);
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
 
     private final LocationData locationData = new LocationData();
 
+    private final PreferenceIndex preferenceIndex = new PreferenceIndex();
+
+    private final IStorage storage;
+
+    public ProfileData() {
+        this(new MemoryStorage());
+    }
+
+    /**
+     * Таблицы по id сразу создаются под число профилей, которое хранилище вернет при восстановлении
+     * @param storage хранилище
+     */
+    public ProfileData(IStorage storage) {
+        this.storage = storage;
+        var capacity = Math.max(minMapCapacity, storage.expectedProfileCount());
+        profileList = new ConcurrentHashMap<>(capacity);
+        indexById = new ConcurrentHashMap<>(capacity);
+    }
+
     public LocationData getLocationData() {return locationData;}
 
+    public PreferenceIndex getPreferenceIndex() {
+        return preferenceIndex;
+    }
+
     public Map<Long, Profile> getMap() {
         return profileList;
     }
@@ -38,13 +74,134 @@ public class ProfileData {
     }
 
     public void addProfile(Profile profile) {
-        selectorMap.put(profile, new ProfileSelector(profile, this));
+        putProfile(profile);
+        storage.saveProfile(profile);
+    }
+
+    /**
+     * Прикрепляет к профилю локацию
+     * @param profile профиль
+     * @param location локация
+     */
+    public void updateLocation(Profile profile, ILocation location) {
+        profile.setLocation(location);
+        locationData.addProfile(profile);
+        storage.saveProfile(profile);
+    }
+
+    /**
+     * Меняет предпочтения поиска юзера
+     * @param profile профиль
+     * @param preferences предпочтения
+     */
+    public void updatePreferences(Profile profile, SearchPreferences preferences) {
+        profile.setPreferences(preferences);
+        storage.saveProfile(profile);
+    }
+
+    /**
+     * Ставит лайк и записывает его в хранилище
+     * @param liker кто лайкнул
+     * @param liked кого лайкнули
+     * @return true, если этот лайк сделал симпатию взаимной
+     */
+    public boolean likeProfile(Profile liker, Profile liked) {
+        var matched = MatchHandler.likeProfile(liker, liked);
+        storage.saveLike(liker.ID, liked.ID);
+        return matched;
+    }
+
+    /**
+     * Восстанавливает профили и лайки из хранилища
+     */
+    public void recover() {
+        storage.recover(new IStorageListener() {
+            @Override
+            public void onProfile(Profile profile) {
+                putProfile(profile);
+                if (profile.getLocation() != null) {
+                    locationData.addProfile(profile);
+                }
+            }
+
+            @Override
+            public void onLike(long likerId, long likedId) {
+                var liker = profileList.get(likerId);
+                var liked = profileList.get(likedId);
+                if (liker != null && liked != null) {
+                    MatchHandler.likeProfile(liker, liked);
+                }
+            }
+
+            @Override
+            public void onUnlike(long likerId, long likedId) {
+                var liker = profileList.get(likerId);
+                var liked = profileList.get(likedId);
+                if (liker != null && liked != null) {
+                    MatchHandler.unlikeProfile(liker, liked);
+                }
+            }
+        });
+    }
+
+    /**
+     * Кладет профиль в хранилище. Новый id получает следующий индекс, профиль с уже известным id
+     * заменяет старый на том же индексе. Вызов для одного id атомарен за счет compute в ConcurrentHashMap
+     */
+    private void putProfile(Profile profile) {
+        indexById.compute(profile.ID, (id, index) -> {
+            if (index == null) {
+                index = nextIndex.getAndIncrement();
+            }
+            chunkOf(index).set(index & (chunkSize - 1), profile);
+            preferenceIndex.update(index, profile);
+            return index;
+        });
         profileList.put(profile.ID, profile);
-        Count++;
+    }
+
+    /**
+     * Возвращает блок массива, в котором лежит индекс, и создает его при необходимости
+     */
+    private AtomicReferenceArray<Profile> chunkOf(int index) {
+        var number = index >>> chunkBits;
+        var chunk = chunks.get(number);
+        if (chunk == null) {
+            chunks.compareAndSet(number, null, new AtomicReferenceArray<>(chunkSize));
+            chunk = chunks.get(number);
+        }
+        return chunk;
     }
 
     public boolean containsId(long id) {
         return profileList.containsKey(id);
     }
 
+    /**
+     * Возвращает плотный индекс профиля
+     * @param profile профиль
+     * @return индекс или -1, если профиля нет в хранилище
+     */
+    public int getIndex(Profile profile) {
+        var index = indexById.get(profile.ID);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Возвращает профиль по плотному индексу
+     * @param index индекс от 0 до size() - 1
+     * @return профиль или null, если профиль с этим индексом еще добавляется в другом потоке
+     */
+    public Profile getByIndex(int index) {
+        var chunk = chunks.get(index >>> chunkBits);
+        return chunk == null ? null : chunk.get(index & (chunkSize - 1));
+    }
+
+    /**
+     * @return количество различных профилей в хранилище
+     */
+    public int size() {
+        return nextIndex.get();
+    }
+
 }
@@ -1,20 +1,49 @@
 package ru.urfu.bot;
 
+import ru.urfu.bot.locations.ILocation;
 import ru.urfu.profile.Profile;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
- * Селектор (выбиратель) профилей. Позволяет выбрать следующий профиль из хранилища. Реализован только вариант с рандомом
+ * Селектор (выбиратель) профилей. Позволяет выбрать следующий профиль из хранилища.
+ * Сначала отдаются юзеры, которые уже лайкнули владельца и ждут ответа. Их список берется из графа симпатий
+ * при первом показе и пересчитывается, только когда владельцу приходит новый лайк; за сессию каждый такой юзер
+ * показывается вне очереди один раз. Затем идут профили поблизости, затем все остальные по курсору. Если у юзера есть предпочтения поиска,
+ * курсор прыгает по индексу предпочтений сразу к следующему подходящему профилю. Просмотренные профили
+ * отмечаются в битсете по плотному индексу из ProfileData, поэтому следующий профиль находится за O(1) в среднем.
+ * Профили из ленты проходят через окно из rankWindow кандидатов, оцененных IProfileScorer: показывается лучший
+ * из окна, а окно добирается из ленты пачкой, когда опустеет наполовину. Полной сортировки нет, за проход
+ * каждый профиль по-прежнему показывается один раз.
  */
 
 public class ProfileSelector {
-    private int counter;
+    private static final int searchRadius = 10;
+    private static final int rankWindow = 32;
+    private static final int feedEnd = -1;
+    private static final int notReady = -2;
+    private static final int slotSpins = 1000;
     private final double oneMeter = (1d / 40075000d) * 360d;
 
     private final Profile owner;
-    private final ArrayList<Profile> viewed = new ArrayList<>();
+    private final BitSet viewed = new BitSet();
+    private int cursor;
+    private final IProfileScorer scorer;
+    private final PriorityQueue<Candidate> ranked =
+            new PriorityQueue<>(rankWindow, Comparator.comparingDouble((Candidate candidate) -> candidate.score).reversed());
+
+    private long[] pendingLikers = new long[0];
+    private int pendingCursor;
+    private int seenIncomingLikes = -1;
+    private final LongSet shownLikers = new LongSet();
+
+    private List<Profile> nearby;
+    private ILocation nearbyLocation;
+    private int nearbyCursor;
 
     public Profile getCurrent() {
         return current;
@@ -30,50 +59,283 @@ public class ProfileSelector {
      * @return обертка над профилем
      */
     public ProfileWrapper getNextProfileWrapper() {
-        if (counter >= ProfileData.Count - 1) {
-            viewed.clear();
-            counter = 0;
-        }
-        if (owner.getLocation() != null) {
-            var i = 10;
-            var gettedList = ProfileData.getLocationData().getProfilesIn(owner.getLocation(), i);
-            for (Profile profile : gettedList) {
-                if (!viewed.contains(profile) && !profile.equals(owner)) {
-                    double oneKiloMeter = oneMeter * 1000;
-                    var distance = owner.getLocation().FindDistanceTo(profile.getLocation()) / oneKiloMeter;
-                    return wrapProfile(extractProfileToCurrentAndView(profile), "Менее чем в " + ((int)distance + 1) + " км от тебя!\n");
-                }
-            }
+        var next = findNextLikedOwner();
+        if (next == null) {
+            next = findNext();
         }
-        Collection<Profile> profileCollection = ProfileData.getProfileList();
-        for (Profile p :
-                profileCollection) {
-            if (!viewed.contains(p) && !p.equals(owner)) {
-                return wrapProfile(extractProfileToCurrentAndView(p), "");
-            }
+        if (next == null && !viewed.isEmpty() && isPassFinished()) {
+            startNewPass();
+            next = findNext();
+        }
+        if (next != null) {
+            current = next.getProfile();
+            return next;
         }
 
         var emptyProfile = new Profile(-1);
         emptyProfile.setName("");
         emptyProfile.setCity("");
         emptyProfile.setUserName("");
-        return wrapProfile(extractProfileToCurrentAndView(emptyProfile), "");
+        current = emptyProfile;
+        return wrapProfile(emptyProfile, -1);
+    }
+
+    private ProfileWrapper findNext() {
+        var next = findNextNearby();
+        return next != null ? next : findNextInFeed();
     }
 
-    private ProfileWrapper wrapProfile(Profile p, String info) {
-        return new ProfileWrapper(p, info);
+    /**
+     * Ищем юзера, который лайкнул владельца, а владелец ему еще не ответил.
+     * Такой профиль показывается даже если уже был просмотрен в этом проходе: лайк мог прийти позже
+     */
+    private ProfileWrapper findNextLikedOwner() {
+        var incoming = MatchHandler.getIncomingLikeCount(owner);
+        if (incoming != seenIncomingLikes) {
+            seenIncomingLikes = incoming;
+            pendingLikers = MatchHandler.getPendingLikers(owner);
+            pendingCursor = 0;
+        }
+        while (pendingCursor < pendingLikers.length) {
+            var likerId = pendingLikers[pendingCursor++];
+            var profile = ProfileData.getMap().get(likerId);
+            var index = profile == null ? -1 : ProfileData.getIndex(profile);
+            if (index < 0 || profile.equals(owner) || shownLikers.contains(likerId)
+                    || !owner.getPreferences().matches(profile)
+                    || !MatchHandler.isFirstLikesSecond(profile, owner)
+                    || MatchHandler.isFirstLikesSecond(owner, profile)) {
+                continue;
+            }
+            shownLikers.add(likerId);
+            return wrapProfile(markViewed(profile, index), -1);
+        }
+        return null;
     }
 
-    private Profile extractProfileToCurrentAndView(Profile p) {
-        counter++;
-        viewed.add(p);
-        current = p;
+    /**
+     * Ищем следующий непросмотренный профиль поблизости
+     */
+    private ProfileWrapper findNextNearby() {
+        var location = owner.getLocation();
+        if (location == null) {
+            return null;
+        }
+        if (nearby == null || nearbyLocation != location) {
+            nearby = ProfileData.getLocationData().getProfilesIn(location, searchRadius);
+            nearbyLocation = location;
+            nearbyCursor = 0;
+        }
+
+        while (nearbyCursor < nearby.size()) {
+            var profile = nearby.get(nearbyCursor++);
+            var index = ProfileData.getIndex(profile);
+            if (index < 0 || viewed.get(index) || profile.equals(owner) || !owner.getPreferences().matches(profile)) {
+                continue;
+            }
+            double oneKiloMeter = oneMeter * 1000;
+            var distance = location.FindDistanceTo(profile.getLocation()) / oneKiloMeter;
+            return wrapProfile(markViewed(profile, index), (int) distance + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Берем лучший профиль из окна кандидатов ленты
+     */
+    private ProfileWrapper findNextInFeed() {
+        if (ranked.size() <= rankWindow / 2) {
+            refillRanked();
+        }
+        while (!ranked.isEmpty()) {
+            var best = ranked.poll();
+            // окно могло набраться при старых предпочтениях владельца
+            if (!viewed.get(best.index) && owner.getPreferences().matches(best.profile)) {
+                return wrapProfile(markViewed(best.profile, best.index), -1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Проход закончен, только если курсор дошел до конца ленты и окно пустое. Если лента остановилась
+     * на профиле, который еще добавляется, проход не начинается заново, а продолжится со следующим свайпом
+     */
+    private boolean isPassFinished() {
+        return cursor >= ProfileData.size() && ranked.isEmpty();
+    }
+
+    /**
+     * Добирает окно кандидатов из ленты до rankWindow
+     */
+    private void refillRanked() {
+        while (ranked.size() < rankWindow) {
+            var index = scanFeed();
+            if (index == feedEnd || index == notReady) {
+                return;
+            }
+            var profile = ProfileData.getByIndex(index);
+            ranked.add(new Candidate(profile, index, scorer.score(owner, profile)));
+        }
+    }
+
+    /**
+     * Ищем следующий непросмотренный профиль среди всех и сдвигаем курсор за него
+     * @return индекс профиля, feedEnd, если лента кончилась, или notReady, если следующий профиль еще добавляется
+     */
+    private int scanFeed() {
+        var preferences = owner.getPreferences();
+        while (cursor < ProfileData.size()) {
+            var index = preferences.isAny()
+                    ? cursor
+                    : ProfileData.getPreferenceIndex().nextMatch(preferences, cursor, ProfileData.size());
+            if (index < 0) {
+                cursor = ProfileData.size();
+                return feedEnd;
+            }
+            cursor = index;
+            if (viewed.get(index)) {
+                cursor++;
+                continue;
+            }
+            var profile = awaitSlot(index);
+            if (profile == null) {
+                // профиль с этим индексом все еще добавляется, курсор остается на нем до следующего свайпа
+                return notReady;
+            }
+            cursor++;
+            if (!profile.equals(owner) && preferences.matches(profile)) {
+                return index;
+            }
+        }
+        return feedEnd;
+    }
+
+    /**
+     * Индекс выдается до того, как профиль положен в ячейку, поэтому ячейку недолго ждем
+     * @return профиль или null, если ячейка так и не заполнилась
+     */
+    private Profile awaitSlot(int index) {
+        for (var i = 0; i < slotSpins; i++) {
+            var profile = ProfileData.getByIndex(index);
+            if (profile != null) {
+                return profile;
+            }
+            Thread.onSpinWait();
+        }
+        return null;
+    }
+
+    /**
+     * Начинает ленту сначала, не забывая просмотренные анкеты. Нужно после смены предпочтений,
+     * чтобы пропущенные раньше анкеты, которые теперь подходят, попали в ленту
+     */
+    public void restart() {
+        cursor = 0;
+        nearby = null;
+        ranked.clear();
+    }
+
+    /**
+     * Сохраняет место в ленте, чтобы селектор следующей сессии юзера продолжил с него.
+     * Анкеты до курсора лента и так больше не покажет, поэтому отметки о просмотре сохраняются только после курсора,
+     * а кандидаты из окна сохраняются индексами и вернутся в окно
+     * @return позиция
+     */
+    public Position savePosition() {
+        var viewedAhead = viewed.get(cursor, Math.max(cursor, viewed.length())).stream()
+                .map(offset -> offset + cursor)
+                .toArray();
+        var candidates = new int[ranked.size()];
+        var count = 0;
+        for (var candidate : ranked) {
+            if (!viewed.get(candidate.index)) {
+                candidates[count++] = candidate.index;
+            }
+        }
+        return new Position(cursor, viewedAhead, Arrays.copyOf(candidates, count), nearbyLocation, nearbyCursor);
+    }
+
+    /**
+     * Продолжает ленту с сохраненного места. Вызывается на новом селекторе до первого показа
+     * @param position позиция из savePosition
+     */
+    public void restorePosition(Position position) {
+        cursor = Math.min(position.cursor, ProfileData.size());
+        for (var index : position.viewedAhead) {
+            viewed.set(index);
+        }
+        for (var index : position.candidates) {
+            var profile = index < 0 ? null : ProfileData.getByIndex(index);
+            if (profile != null) {
+                viewed.clear(index);
+                ranked.add(new Candidate(profile, index, scorer.score(owner, profile)));
+            }
+        }
+        var location = owner.getLocation();
+        if (location != null && location == position.nearbyLocation) {
+            nearby = ProfileData.getLocationData().getProfilesIn(location, searchRadius);
+            nearbyLocation = location;
+            nearbyCursor = Math.min(position.nearbyCursor, nearby.size());
+        }
+    }
+
+    private void startNewPass() {
+        viewed.clear();
+        restart();
+    }
+
+    private ProfileWrapper wrapProfile(Profile p, int distance) {
+        return new ProfileWrapper(p, distance);
+    }
+
+    private Profile markViewed(Profile p, int index) {
+        viewed.set(index);
         return p;
     }
 
 
     public ProfileSelector(Profile owner, ru.urfu.bot.ProfileData profileData) {
+        this(owner, profileData, new DefaultProfileScorer());
+    }
+
+    public ProfileSelector(Profile owner, ru.urfu.bot.ProfileData profileData, IProfileScorer scorer) {
         this.owner = owner;
         ProfileData = profileData;
+        this.scorer = scorer;
+    }
+
+    /**
+     * Место в ленте, которое переживает удаление сессии. Занимает несколько десятков байт
+     * плюс отметки о просмотре после курсора, а не весь битсет
+     */
+    public static class Position {
+        private final int cursor;
+        private final int[] viewedAhead;
+        private final int[] candidates;
+        private final ILocation nearbyLocation;
+        private final int nearbyCursor;
+
+        Position(int cursor, int[] viewedAhead, int[] candidates, ILocation nearbyLocation, int nearbyCursor) {
+            this.cursor = cursor;
+            this.viewedAhead = viewedAhead;
+            this.candidates = candidates;
+            this.nearbyLocation = nearbyLocation;
+            this.nearbyCursor = nearbyCursor;
+        }
+    }
+
+    /**
+     * Профиль из окна кандидатов вместе с его оценкой
+     */
+    private static class Candidate {
+        final Profile profile;
+        final int index;
+        final double score;
+
+        Candidate(Profile profile, int index, double score) {
+            this.profile = profile;
+            this.index = index;
+            this.score = score;
+        }
     }
 }
@@ -3,23 +3,27 @@ package ru.urfu.bot;
 import ru.urfu.profile.Profile;
 
 /**
- * Класс обертки над профилем. Представляет собой профиль с какой-то подписью или технической информацией
+ * Класс обертки над профилем. Представляет собой профиль с технической информацией:
+ * расстоянием до него, если он найден поблизости. Текст из этой информации собирается только при отправке
  */
 
 public class ProfileWrapper {
     private final Profile profile;
-    private final String information;
+    private final int distance;
 
     public Profile getProfile() {
         return profile;
     }
 
-    public String getInformation() {
-        return information;
+    /**
+     * @return расстояние до профиля в км, округленное вверх, или -1, если профиль найден не по локации
+     */
+    public int getDistance() {
+        return distance;
     }
 
-    public ProfileWrapper(Profile profile, String information) {
-        this.information = information;
+    public ProfileWrapper(Profile profile, int distance) {
+        this.distance = distance;
         this.profile = profile;
     }
 }
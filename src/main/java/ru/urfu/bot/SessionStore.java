@@ -0,0 +1,136 @@
+package ru.urfu.bot;
+
+import ru.urfu.profile.Profile;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Хранилище сессий юзеров по id.
+ * Сессии, к которым долго не обращались, удаляются, а их клавиатура и место в ленте сохраняются в профиль,
+ * поэтому в памяти держатся только активные юзеры. Остальное состояние сессии при удалении теряется:
+ * открытый список симпатий придется открыть заново, а недонастроенные предпочтения поиска - настроить с начала.
+ * Проверка на простой идет в общем фоновом потоке раз в половину времени простоя, а не в потоке,
+ * который обрабатывает чей-то апдейт. Хранилище с такой проверкой нужно закрыть, иначе задача проверки
+ * держит его в памяти вместе со всеми сессиями.
+ */
+
+public class SessionStore implements AutoCloseable {
+    private static final ScheduledThreadPoolExecutor sweeper = createSweeper();
+
+    private final Map<Long, UserSession> sessions = new ConcurrentHashMap<>();
+    private final ProfileData profileData;
+    private final long idleMillis;
+    private final LongSupplier clock;
+    private ScheduledFuture<?> sweep;
+
+    /**
+     * Сессии удаляются после 30 минут простоя
+     * @param profileData профили, по которым ходят селекторы сессий
+     */
+    public SessionStore(ProfileData profileData) {
+        this(profileData, TimeUnit.MINUTES.toMillis(30), System::currentTimeMillis);
+        var period = idleMillis / 2;
+        sweep = sweeper.scheduleAtFixedRate(() -> evictIdle(clock.getAsLong()), period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Хранилище без фоновой проверки на простой, evictIdle вызывается вручную
+     * @param profileData профили, по которым ходят селекторы сессий
+     * @param idleMillis через сколько миллисекунд простоя удалять сессию
+     * @param clock текущее время в миллисекундах
+     */
+    public SessionStore(ProfileData profileData, long idleMillis, LongSupplier clock) {
+        this.profileData = profileData;
+        this.idleMillis = idleMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Возвращает сессию юзера, создавая ее при первом обращении
+     * @param owner профиль юзера
+     * @return сессия
+     */
+    public UserSession getSession(Profile owner) {
+        var now = clock.getAsLong();
+        var session = sessions.compute(owner.ID, (id, existing) -> {
+            if (existing == null) {
+                existing = new UserSession(owner, createSelector(owner));
+            }
+            existing.touch(now);
+            return existing;
+        });
+        owner.setLastActive(now);
+        return session;
+    }
+
+    private ProfileSelector createSelector(Profile owner) {
+        var selector = new ProfileSelector(owner, profileData);
+        var position = owner.getFeedPosition();
+        if (position != null) {
+            selector.restorePosition(position);
+            owner.setFeedPosition(null);
+        }
+        return selector;
+    }
+
+    /**
+     * Удаляет сессии, которые простаивали дольше допустимого. Апдейтов юзера такой сессии давно не было,
+     * поэтому ее селектор можно читать из потока проверки
+     * @param now текущее время в миллисекундах
+     */
+    public void evictIdle(long now) {
+        for (var id : sessions.keySet()) {
+            sessions.computeIfPresent(id, (key, session) -> {
+                if (now - session.getLastAccess() < idleMillis) {
+                    return session;
+                }
+                session.getOwner().setCurrentKeyboard(session.getKeyboard());
+                session.getOwner().setFeedPosition(session.getSelector().savePosition());
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return количество сессий в памяти
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * @return запланирована ли фоновая проверка на простой
+     */
+    boolean isSweeping() {
+        return sweep != null && !sweep.isCancelled();
+    }
+
+    /**
+     * Один поток проверки на все хранилища. Отмененная задача сразу убирается из очереди, а не ждет своего запуска,
+     * чтобы закрытое хранилище не держалось в памяти до следующей проверки
+     */
+    private static ScheduledThreadPoolExecutor createSweeper() {
+        var executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            var thread = new Thread(runnable, "session-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Останавливает фоновую проверку на простой
+     */
+    @Override
+    public void close() {
+        if (sweep != null) {
+            sweep.cancel(false);
+        }
+    }
+}
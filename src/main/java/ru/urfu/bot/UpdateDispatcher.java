@@ -0,0 +1,135 @@
+package ru.urfu.bot;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Диспетчер апдейтов с фиксированным набором очередей и потоков.
+ * Юзер всегда попадает в одну и ту же очередь по своему id, поэтому его апдейты обрабатываются по порядку.
+ * Очереди ограничены: когда очередь заполнена, поток библиотеки ждет (так библиотека перестает забирать новые апдейты),
+ * а если место так и не освободилось, апдейт отбрасывается и учитывается в метриках.
+ */
+
+public class UpdateDispatcher implements IUpdateDispatcher {
+    private static final long offerTimeoutSeconds = 30;
+
+    private final BlockingQueue<Runnable>[] queues;
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitedForSpace = new LongAdder();
+
+    /**
+     * @param workers количество очередей и потоков
+     * @param queueCapacity сколько апдейтов может ждать в одной очереди
+     */
+    @SuppressWarnings("unchecked")
+    public UpdateDispatcher(int workers, int queueCapacity) {
+        queues = new BlockingQueue[workers];
+        for (var i = 0; i < workers; i++) {
+            var queue = new ArrayBlockingQueue<Runnable>(queueCapacity);
+            queues[i] = queue;
+            var thread = new Thread(() -> work(queue), "update-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Диспетчер с очередью на каждое ядро
+     */
+    public UpdateDispatcher() {
+        this(Runtime.getRuntime().availableProcessors(), 1000);
+    }
+
+    @Override
+    public void dispatch(long userId, Runnable task) {
+        var queue = queues[partitionOf(userId)];
+        dispatched.increment();
+        if (queue.offer(task)) {
+            return;
+        }
+
+        waitedForSpace.increment();
+        try {
+            if (!queue.offer(task, offerTimeoutSeconds, TimeUnit.SECONDS)) {
+                rejected.increment();
+            }
+        } catch (InterruptedException e) {
+            rejected.increment();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return сколько апдейтов ждет во всех очередях
+     */
+    public int getQueueDepth() {
+        var depth = 0;
+        for (var queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return размер самой длинной очереди
+     */
+    public int getMaxQueueDepth() {
+        var max = 0;
+        for (var queue : queues) {
+            max = Math.max(max, queue.size());
+        }
+        return max;
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.sum();
+    }
+
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return сколько раз поток библиотеки ждал места в очереди
+     */
+    public long getWaitedForSpaceCount() {
+        return waitedForSpace.sum();
+    }
+
+    private int partitionOf(long userId) {
+        var hash = Long.hashCode(userId);
+        return Math.floorMod(hash ^ (hash >>> 16), queues.length);
+    }
+
+    private void work(BlockingQueue<Runnable> queue) {
+        while (true) {
+            Runnable task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                failed.increment();
+                e.printStackTrace();
+            } finally {
+                processed.increment();
+            }
+        }
+    }
+}
@@ -1,22 +1,56 @@
 package ru.urfu.bot;
 
+import ru.urfu.bot.commands.Command;
+import ru.urfu.bot.commands.CommandRegistry;
 import ru.urfu.bot.keyboards.Keyboards;
+import ru.urfu.bot.metrics.Metrics;
+import ru.urfu.bot.metrics.Stage;
 import ru.urfu.bot.registration.Registrar;
+import ru.urfu.bot.storage.IStorage;
+import ru.urfu.bot.storage.MemoryStorage;
 import ru.urfu.profile.Profile;
 
+import java.util.ArrayList;
+
 /**
  * Класс, который принимает и обрабатывает обновления
  */
 
-public class UpdateHandler {
+public class UpdateHandler implements AutoCloseable {
+    /**
+     * Сколько анкет из списка симпатий показывается за раз, ровно один альбом
+     */
+    private static final int likesPageSize = 10;
+
     final Registrar registrar;
-    private boolean inAdditionalMenu = false;
     private ProfileData ProfileData;
+    private final SessionStore sessions;
+    private final CaptionCache captions = new CaptionCache();
+    private final PreferencesEditor preferencesEditor;
 
 
     public UpdateHandler() {
-        this.ProfileData = new ProfileData();
+        this(new MemoryStorage());
+    }
+
+    /**
+     * Создает обработчик и восстанавливает сохраненные профили и лайки
+     * @param storage хранилище профилей и лайков
+     */
+    public UpdateHandler(IStorage storage) {
+        this.ProfileData = new ProfileData(storage);
+        this.ProfileData.recover();
         this.registrar = new Registrar(ProfileData);
+        this.sessions = new SessionStore(ProfileData);
+        this.preferencesEditor = new PreferencesEditor(ProfileData);
+    }
+
+    /**
+     * Останавливает фоновую работу обработчика, после этого он может быть собран сборщиком мусора
+     */
+    @Override
+    public void close() {
+        sessions.close();
     }
 
     /**
@@ -24,10 +58,17 @@ public class UpdateHandler {
      * @param innerUpdate апдейт
      */
     public void handleUpdate(IUpdate innerUpdate) {
+        if (!innerUpdate.getMessage().hasText() && !innerUpdate.getMessage().hasPhoto()) {
+            return;
+        }
+        var start = Metrics.start();
+        var label = Metrics.enabled ? getMetricLabel(innerUpdate) : null;
+
         if (innerUpdate.getMessage().hasText()) {
             try {
                 handleText(innerUpdate);
             } catch (Exception e) {
+                Metrics.fail(Stage.handle, innerUpdate.isFromTelegram(), label);
                 e.printStackTrace();
             }
         }
@@ -37,9 +78,11 @@ public class UpdateHandler {
             try {
                 handlePhoto(innerUpdate);
             } catch (Exception e) {
+                Metrics.fail(Stage.handle, innerUpdate.isFromTelegram(), label);
                 e.printStackTrace();
             }
         }
+        Metrics.record(Stage.handle, innerUpdate.isFromTelegram(), label, start);
     }
 
 
@@ -48,9 +91,30 @@ public class UpdateHandler {
      * @param update апдейт
      */
     public void handleLocation(IUpdate update) {
-        getProfileFromUpdate(update).setLocation(update.getLocation());
-        ProfileData.getLocationData().addProfile(getProfileFromUpdate(update));
+        var start = Metrics.start();
+        ProfileData.updateLocation(getProfileFromUpdate(update), update.getLocation());
         MessageSender.sendMessageWithKeyboard("Позиция прикреплена!", Keyboards.main, update);
+        Metrics.record(Stage.handle, update.isFromTelegram(), "location", start);
+    }
+
+    /**
+     * Метка апдейта для замеров: команда, регистрация или фото
+     *
+     * @param update апдейт
+     * @return метка
+     */
+    private String getMetricLabel(IUpdate update) {
+        if (!update.getMessage().hasText()) {
+            return "photo";
+        }
+        if (!isRegistered(getIdFromUpdate(update))) {
+            return "registration";
+        }
+        if (getSession(update).getPreferencesDraft() != null) {
+            return "preferences";
+        }
+        var registry = getSession(update).isInAdditionalMenu() ? CommandRegistry.additionalMenu : CommandRegistry.defaultMenu;
+        return getCommandFromUpdate(update, registry).name();
     }
 
     /**
@@ -65,8 +129,14 @@ public class UpdateHandler {
             return;
         }
 
-        if (inAdditionalMenu) {
-            openAdditionalMenu(update);
+        if (getSession(update).getPreferencesDraft() != null) {
+            if (preferencesEditor.handle(update, getSession(update))) {
+                handleNextCase(update);
+            }
+            return;
+        }
+
+        if (getSession(update).isInAdditionalMenu()) {
             handleTextInAdditionalMenu(update);
             return;
         }
@@ -79,26 +149,17 @@ public class UpdateHandler {
      * обрабатываем действия пользователя в основном меню
      */
     private void handleTextInDefaultMenu(IUpdate update) {
-        switch (getCommandFromUpdate(update)) {
-            case ("Дальше"):
-            case ("Назад"):
-            case ("Ок, понял"):
-            case ("Поехали!\uD83D\uDE40"):
-            case ("\uD83D\uDC4E"):
+        switch (getCommandFromUpdate(update, CommandRegistry.defaultMenu)) {
+            case next:
                 handleNextCase(update);
                 break;
 
-            case ("Лайк"):
-            case ("лайк"):
-            case ("❤️"):
+            case like:
                 handleLikeCase(update);
                 break;
 
-            case ("eщё"):
-            case ("еще"):
-            case ("Ещё"):
-            case ("Еще"):
-                inAdditionalMenu = true;
+            case more:
+                getSession(update).setInAdditionalMenu(true);
                 openAdditionalMenu(update);
                 return;
 
@@ -106,30 +167,42 @@ public class UpdateHandler {
                 help(update);
                 return;
         }
-        getProfileFromUpdate(update).setCurrentKeyboard(Keyboards.main);
+        getSession(update).setKeyboard(Keyboards.main);
     }
 
     /**
      * Обрабатываем действия пользователя в дополнительном меню
      */
     private void handleTextInAdditionalMenu(IUpdate update) {
-        switch (getCommandFromUpdate(update)) {
-            case ("Назад"):
-                break;
+        var command = getCommandFromUpdate(update, CommandRegistry.additionalMenu);
+        if (command == Command.filters) {
+            preferencesEditor.start(update, getSession(update));
+            return;
+        }
+        openAdditionalMenu(update);
+        switch (command) {
+            case nextPage:
+                if (!sendLikesPage(update)) {
+                    MessageSender.sendMessageWithKeyboard("Больше никого нет", Keyboards.additionalMenu, update);
+                }
+                return;
 
-            case ("Взаимные \uD83D\uDC9E"):
+            case mutual:
                 getMutualSympathy(update);
                 return;
 
-            case ("Мои ❤️"):
+            case myLikes:
                 getLikedByMe(update);
                 return;
 
-            case ("Я понравился???"):
+            case likedMe:
                 getWhoLikedMe(update);
                 return;
+
+            default:
+                break;
         }
-        inAdditionalMenu = false;
+        getSession(update).setInAdditionalMenu(false);
         MessageSender.sendMessageWithKeyboard("Возвращаемся к просмотру анкет!", Keyboards.main, update);
         handleNextCase(update);
     }
@@ -138,60 +211,74 @@ public class UpdateHandler {
      * Получаем список тех, кого я лайкнул
      */
     private void getWhoLikedMe(IUpdate update) {
-        var owner = getProfileFromUpdate(update);
-        var whoLikedUser = MatchHandler.getWhoLikedUser(owner);
-        if (whoLikedUser.isEmpty()) {
-            MessageSender.sendMessageWithKeyboard("Ты никому не нравишься. Совсем.", Keyboards.additionalMenu, update);
-        }
-        for (Profile p : whoLikedUser) {
-            MessageSender.sendPhotoWithCaption(update, p, getCaption(p));
-        }
-
-        MessageSender.sendMessageWithKeyboard("с:", Keyboards.additionalMenu, update);
+        openLikeList(update, LikeGraph.LikeList.likedBy, "Ты никому не нравишься. Совсем.");
     }
 
     /**
      * получаем список взаимных симпатий
      */
     private void getMutualSympathy(IUpdate update) {
-        var owner = getProfileFromUpdate(update);
-        var mutual = MatchHandler.getMutualLikes(owner);
-        if (mutual.isEmpty()) {
-            MessageSender.sendMessageWithKeyboard("Нет никакой взаимности...", Keyboards.additionalMenu, update);
-        }
-        for (Profile p : mutual) {
-            MessageSender.sendPhotoWithCaption(update, p, getCaption(p));
-        }
-
-        MessageSender.sendMessageWithKeyboard("с:", Keyboards.additionalMenu, update);
+        openLikeList(update, LikeGraph.LikeList.mutual, "Нет никакой взаимности...");
     }
 
     /**
      * получаем список тех кто лайкнул меня
      */
     private void getLikedByMe(IUpdate update) {
-        var owner = getProfileFromUpdate(update);
-        var likes = MatchHandler.getLikesByUser(owner);
-        if (likes.isEmpty()) {
-            MessageSender.sendMessageWithKeyboard(
-                    "Ты же прекрасно знаешь, что не ставил никому лайки. Не ломай бота",
-                    Keyboards.additionalMenu, update);
+        openLikeList(update, LikeGraph.LikeList.likesTo,
+                "Ты же прекрасно знаешь, что не ставил никому лайки. Не ломай бота");
+    }
+
+    /**
+     * Показываем первую страницу списка симпатий
+     * @param emptyText что ответить, если список пуст
+     */
+    private void openLikeList(IUpdate update, LikeGraph.LikeList list, String emptyText) {
+        getSession(update).startLikeList(list);
+        if (!sendLikesPage(update)) {
+            MessageSender.sendMessageWithKeyboard(emptyText, Keyboards.additionalMenu, update);
         }
-        for (Profile p : likes) {
-            MessageSender.sendPhotoWithCaption(update, p, getCaption(p));
+    }
+
+    /**
+     * Отправляет следующую страницу листаемого списка симпатий альбомом.
+     * Запрашивается на одну анкету больше страницы, чтобы понять, показывать ли кнопку "Следующие"
+     * @return false, если показывать нечего
+     */
+    private boolean sendLikesPage(IUpdate update) {
+        var session = getSession(update);
+        if (session.getLikeList() == null) {
+            return false;
         }
+        var page = MatchHandler.getPage(session.getOwner(), session.getLikeList(), session.getLikeCursor(),
+                likesPageSize + 1);
+        if (page.isEmpty()) {
+            return false;
+        }
+
+        var hasNext = page.size() > likesPageSize;
+        var shown = hasNext ? page.subList(0, likesPageSize) : page;
+        var pageCaptions = new ArrayList<String>(shown.size());
+        for (var profile : shown) {
+            pageCaptions.add(captions.getCaption(profile));
+        }
+        MessageSender.sendPhotosWithCaptions(update, shown, pageCaptions);
+        session.setLikeCursor(shown.get(shown.size() - 1).ID);
 
-        MessageSender.sendMessageWithKeyboard("с:", Keyboards.additionalMenu, update);
+        var keyboard = hasNext ? Keyboards.additionalMenuWithNext : Keyboards.additionalMenu;
+        session.setKeyboard(keyboard);
+        MessageSender.sendMessageWithKeyboard("с:", keyboard, update);
+        return true;
     }
 
     private void help(IUpdate update) {
         var text = "Ты использовал неизвестную мне команду, пожалуйста пользуйся кнопками";
         MessageSender.sendMessageWithKeyboard(text, Keyboards.invalidCommand, update);
-        getProfileFromUpdate(update).setCurrentKeyboard(Keyboards.invalidCommand);
+        getSession(update).setKeyboard(Keyboards.invalidCommand);
     }
 
     private void openAdditionalMenu(IUpdate update) {
-        getProfileFromUpdate(update).setCurrentKeyboard(Keyboards.additionalMenu);
+        getSession(update).setKeyboard(Keyboards.additionalMenu);
         MessageSender.sendMessageWithKeyboard("Просмотр данных о симпатиях", Keyboards.additionalMenu, update);
     }
 
@@ -202,10 +289,15 @@ public class UpdateHandler {
      */
     private void handleLikeCase(IUpdate update) {
         var owner = getProfileFromUpdate(update);
-        var selector = this.ProfileData.getProfileSelector(owner);
-        var other = selector.getCurrent();
-        if (other.getID() != -1) {
-            MatchHandler.likeProfile(owner, selector.getCurrent());
+        var other = getSession(update).getSelector().getCurrent();
+        if (other != null && other.getID() != -1) {
+            var start = Metrics.start();
+            var mutual = ProfileData.likeProfile(owner, other);
+            Metrics.record(Stage.like, update.isFromTelegram(), "like", start);
+            if (mutual) {
+                MessageSender.sendMessage("Это взаимно! Можешь написать @" + other.getTelegramUserName(), update);
+                MessageSender.sendMessage("Это взаимно! Можешь написать @" + owner.getTelegramUserName(), other);
+            }
         }
         handleNextCase(update);
     }
@@ -218,8 +310,9 @@ public class UpdateHandler {
      */
     private void handleNextCase(IUpdate update) {
         var owner = getProfileFromUpdate(update);
-        var selector = this.ProfileData.getProfileSelector(owner);
-        var nextProfile = selector.getNextProfileWrapper();
+        var start = Metrics.start();
+        var nextProfile = getSession(update).getSelector().getNextProfileWrapper();
+        Metrics.record(Stage.select, update.isFromTelegram(), "feed", start);
         if (nextProfile.getProfile().ID == -1) {
             MessageSender.sendMessageWithKeyboard("К сожалению нам некого тебе показать",
                     Keyboards.invalidCommand,
@@ -227,11 +320,8 @@ public class UpdateHandler {
 
             return;
         }
-        var caption = getCaption(nextProfile);
-
-        if (MatchHandler.isFirstLikesSecond(nextProfile.getProfile(), owner)) {
-            caption = "Ты понравился одному человеку!\n" + caption;
-        }
+        var caption = captions.getCaption(nextProfile.getProfile(), nextProfile.getDistance(),
+                MatchHandler.isFirstLikesSecond(nextProfile.getProfile(), owner));
 
         MessageSender.sendPhotoWithCaption(update, nextProfile.getProfile(), caption);
     }
@@ -240,18 +330,29 @@ public class UpdateHandler {
         return getProfileFromId(getIdFromUpdate(update));
     }
 
+    /**
+     * Метод, получающий сессию юзера, от которого пришел апдейт
+     *
+     * @param update апдейт
+     * @return сессия
+     */
+    private UserSession getSession(IUpdate update) {
+        return sessions.getSession(getProfileFromUpdate(update));
+    }
+
 
     /**
-     * Метод, получающий текст из апдейта
+     * Метод, получающий команду из апдейта
      *
      * @param update апдейт
-     * @return возвращает сам текст
+     * @param registry таблица команд текущего меню
+     * @return возвращает команду
      */
-    private String getCommandFromUpdate(IUpdate update) {
-        var keyboard = getProfileFromUpdate(update).getCurrentKeyboard();
+    private Command getCommandFromUpdate(IUpdate update, CommandRegistry registry) {
+        var keyboard = getSession(update).getKeyboard();
         var messageText = update.getMessage().getText();
 
-        return keyboard.getCommand(messageText);
+        return registry.resolve(keyboard, messageText);
     }
 
     /**
@@ -287,37 +388,6 @@ public class UpdateHandler {
     }
 
 
-    /**
-     * Метод, генерирующий подпись к фотографии
-     *
-     * @param nextProfileWrapper профиль-обёртка для генерации
-     * @return возвращает подпись
-     */
-    private String getCaption(ProfileWrapper nextProfileWrapper) {
-
-        var nextProfile = nextProfileWrapper.getProfile();
-        return nextProfileWrapper.getInformation() + String.format("%s\n%s\n%s\n@%s",
-                nextProfile.getName(),
-                nextProfile.getCity(),
-                nextProfile.getAge(),
-                nextProfile.getTelegramUserName());
-    }
-
-    /**
-     * Метод, генерирующий подпись к фотографии
-     * @param nextProfile профиль, для которого генерируется подпись
-     * @return возвращает саму подпись
-     */
-    private String getCaption(Profile nextProfile) {
-
-        return String.format("%s\n%s\n%s\n@%s",
-                nextProfile.getName(),
-                nextProfile.getCity(),
-                nextProfile.getAge(),
-                nextProfile.getTelegramUserName());
-    }
-
-
     /**
      * Метод, принимающий фото
      *
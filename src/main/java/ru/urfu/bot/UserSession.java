@@ -0,0 +1,100 @@
+package ru.urfu.bot;
+
+import ru.urfu.bot.keyboards.IKeyboard;
+import ru.urfu.bot.keyboards.Keyboards;
+import ru.urfu.profile.Profile;
+
+/**
+ * Состояние диалога с одним юзером: в каком он меню, какая у него клавиатура, где он в ленте анкет
+ * какую страницу списка симпатий смотрит и не настраивает ли сейчас предпочтения поиска.
+ * Новая сессия начинается с клавиатуры, сохраненной в профиле.
+ * Апдейты одного юзера обрабатываются по очереди, поэтому сессию меняет только один поток за раз.
+ */
+
+public class UserSession {
+    private final Profile owner;
+    private final ProfileSelector selector;
+    private IKeyboard keyboard;
+    private boolean inAdditionalMenu;
+    private LikeGraph.LikeList likeList;
+    private long likeCursor;
+    private PreferencesEditor.Draft preferencesDraft;
+    private volatile long lastAccess;
+
+    public UserSession(Profile owner, ProfileSelector selector) {
+        this.owner = owner;
+        this.selector = selector;
+        this.keyboard = owner.getCurrentKeyboard();
+        this.inAdditionalMenu = keyboard == Keyboards.additionalMenu;
+    }
+
+    public Profile getOwner() {
+        return owner;
+    }
+
+    public ProfileSelector getSelector() {
+        return selector;
+    }
+
+    public IKeyboard getKeyboard() {
+        return keyboard;
+    }
+
+    public void setKeyboard(IKeyboard keyboard) {
+        this.keyboard = keyboard;
+    }
+
+    public boolean isInAdditionalMenu() {
+        return inAdditionalMenu;
+    }
+
+    public void setInAdditionalMenu(boolean inAdditionalMenu) {
+        this.inAdditionalMenu = inAdditionalMenu;
+    }
+
+    /**
+     * @return какой список симпатий юзер сейчас листает или null
+     */
+    public LikeGraph.LikeList getLikeList() {
+        return likeList;
+    }
+
+    /**
+     * @return id последнего показанного профиля в листаемом списке
+     */
+    public long getLikeCursor() {
+        return likeCursor;
+    }
+
+    /**
+     * Начинает листать список симпатий с первой страницы
+     * @param likeList список
+     */
+    public void startLikeList(LikeGraph.LikeList likeList) {
+        this.likeList = likeList;
+        this.likeCursor = Long.MIN_VALUE;
+    }
+
+    public void setLikeCursor(long likeCursor) {
+        this.likeCursor = likeCursor;
+    }
+
+    /**
+     * @return недонастроенные предпочтения поиска или null, если юзер их не настраивает
+     */
+    public PreferencesEditor.Draft getPreferencesDraft() {
+        return preferencesDraft;
+    }
+
+    public void setPreferencesDraft(PreferencesEditor.Draft preferencesDraft) {
+        this.preferencesDraft = preferencesDraft;
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    void touch(long now) {
+        lastAccess = now;
+    }
+}
@@ -0,0 +1,120 @@
+package ru.urfu.bot;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Диспетчер, который запускает каждую очередь юзера в отдельном виртуальном потоке.
+ * Пока у юзера есть апдейты, их по одному выполняет один поток, поэтому порядок сохраняется,
+ * а блокирующие отправки в Telegram и Discord не занимают платформенные потоки.
+ * Число апдейтов в работе ограничено, сверх него поток библиотеки ждет.
+ */
+
+public class VirtualThreadDispatcher implements IUpdateDispatcher {
+    private final ExecutorService executor;
+    private final Semaphore inFlightLimit;
+    private final Map<Long, ArrayDeque<Runnable>> queues = new ConcurrentHashMap<>();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param executor где запускать очереди юзеров
+     * @param maxInFlight сколько апдейтов может одновременно ждать или выполняться
+     */
+    public VirtualThreadDispatcher(ExecutorService executor, int maxInFlight) {
+        this.executor = executor;
+        this.inFlightLimit = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Создает диспетчер на виртуальных потоках
+     * @return диспетчер
+     */
+    public static VirtualThreadDispatcher create() {
+        return new VirtualThreadDispatcher(Executors.newVirtualThreadPerTaskExecutor(), 10_000);
+    }
+
+    @Override
+    public void dispatch(long userId, Runnable task) {
+        try {
+            inFlightLimit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        var start = new boolean[1];
+        queues.compute(userId, (id, queue) -> {
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                start[0] = true;
+            }
+            queue.add(task);
+            return queue;
+        });
+        if (start[0]) {
+            executor.execute(() -> drain(userId));
+        }
+    }
+
+    /**
+     * Очереди меняются только внутри compute, поэтому и размер каждой читается через computeIfPresent
+     * @return сколько апдейтов сейчас ждет в очередях юзеров
+     */
+    public int getInFlight() {
+        var depth = new int[1];
+        for (var id : queues.keySet()) {
+            queues.computeIfPresent(id, (key, queue) -> {
+                depth[0] += queue.size();
+                return queue;
+            });
+        }
+        return depth[0];
+    }
+
+    /**
+     * @return у скольких юзеров сейчас есть необработанные апдейты
+     */
+    public int getActiveUsers() {
+        return queues.size();
+    }
+
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Выполняет апдейты юзера, пока они есть. Пустая очередь удаляется атомарно,
+     * поэтому следующий апдейт юзера запустит новый поток
+     */
+    private void drain(long userId) {
+        var next = new Runnable[1];
+        while (true) {
+            queues.computeIfPresent(userId, (id, queue) -> {
+                next[0] = queue.poll();
+                return next[0] == null ? null : queue;
+            });
+            if (next[0] == null) {
+                return;
+            }
+            try {
+                next[0].run();
+            } catch (Exception e) {
+                failed.increment();
+                e.printStackTrace();
+            } finally {
+                processed.increment();
+                inFlightLimit.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ru.urfu.bot.commands;
+
+/**
+ * Команды, которые юзер может отправить из меню после регистрации
+ */
+
+public enum Command {
+    /**
+     * Показать следующую анкету
+     */
+    next,
+    /**
+     * Лайкнуть текущую анкету
+     */
+    like,
+    /**
+     * Открыть доп меню
+     */
+    more,
+    /**
+     * Вернуться из доп меню к анкетам
+     */
+    back,
+    /**
+     * Показать взаимные симпатии
+     */
+    mutual,
+    /**
+     * Показать, кого лайкнул юзер
+     */
+    myLikes,
+    /**
+     * Показать, кто лайкнул юзера
+     */
+    likedMe,
+    /**
+     * Показать следующую страницу списка симпатий
+     */
+    nextPage,
+    /**
+     * Настроить предпочтения поиска
+     */
+    filters,
+    /**
+     * Команда не распознана
+     */
+    unknown
+}
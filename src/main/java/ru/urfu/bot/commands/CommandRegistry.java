@@ -0,0 +1,122 @@
+package ru.urfu.bot.commands;
+
+import ru.urfu.bot.keyboards.IKeyboard;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Таблица команд одного меню. Текст кнопки находится в таблице сразу, остальной текст нормализуется
+ * (пробелы по краям, регистр, ё, вариант эмодзи) и ищется еще раз. Номера кнопок из Discord переводятся в команды
+ * через таблицу, которая один раз строится для каждой клавиатуры.
+ */
+
+public class CommandRegistry {
+    /**
+     * Основное меню с анкетами
+     */
+    public static final CommandRegistry defaultMenu = new CommandRegistry()
+            .add(Command.next, "Дальше", "Назад", "Ок, понял", "Поехали!\uD83D\uDE40", "\uD83D\uDC4E")
+            .add(Command.like, "Лайк", "❤️")
+            .add(Command.more, "Еще", "Ещё", "eщё");
+
+    /**
+     * Доп меню со списками симпатий
+     */
+    public static final CommandRegistry additionalMenu = new CommandRegistry()
+            .add(Command.back, "Назад")
+            .add(Command.nextPage, "Следующие")
+            .add(Command.filters, "Фильтры")
+            .add(Command.mutual, "Взаимные \uD83D\uDC9E")
+            .add(Command.myLikes, "Мои ❤️")
+            .add(Command.likedMe, "Я понравился???");
+
+    private final Map<String, Command> commands = new HashMap<>();
+    private final Map<IKeyboard, Command[]> buttons = new ConcurrentHashMap<>();
+
+    /**
+     * Добавляет варианты написания команды
+     * @param command команда
+     * @param aliases варианты текста
+     * @return эта же таблица
+     */
+    public CommandRegistry add(Command command, String... aliases) {
+        for (var alias : aliases) {
+            commands.put(alias, command);
+            commands.put(normalize(alias), command);
+        }
+        return this;
+    }
+
+    /**
+     * Определяет команду по тексту сообщения
+     * @param keyboard клавиатура, которая сейчас у юзера, для перевода номеров кнопок
+     * @param text текст сообщения
+     * @return команда или Command.unknown
+     */
+    public Command resolve(IKeyboard keyboard, String text) {
+        var button = buttonNumber(text);
+        if (button > 0 && keyboard != null) {
+            var byButton = buttons.computeIfAbsent(keyboard, this::compileButtons);
+            return button <= byButton.length ? byButton[button - 1] : Command.unknown;
+        }
+        var command = commands.get(text);
+        if (command != null) {
+            return command;
+        }
+        return commands.getOrDefault(normalize(text), Command.unknown);
+    }
+
+    /**
+     * Приводит текст к виду, в котором хранятся команды
+     * @param text текст
+     * @return нормализованный текст
+     */
+    public static String normalize(String text) {
+        return text.trim()
+                .toLowerCase(Locale.ROOT)
+                .replace('ё', 'е')
+                .replace("\uFE0F", "");
+    }
+
+    /**
+     * Переводит кнопки клавиатуры в команды в порядке их номеров в Discord
+     */
+    private Command[] compileButtons(IKeyboard keyboard) {
+        var rows = keyboard.getTelegramKeyboard().getKeyboard();
+        var count = 0;
+        for (var row : rows) {
+            count += row.size();
+        }
+
+        var result = new Command[count];
+        var index = 0;
+        for (var row : rows) {
+            for (var button : row) {
+                result[index++] = commands.getOrDefault(normalize(button.getText()), Command.unknown);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return номер кнопки, если текст - небольшое целое число, иначе -1
+     */
+    private static int buttonNumber(String text) {
+        var trimmed = text.trim();
+        if (trimmed.isEmpty() || trimmed.length() > 2) {
+            return -1;
+        }
+        var number = 0;
+        for (var i = 0; i < trimmed.length(); i++) {
+            var c = trimmed.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+}
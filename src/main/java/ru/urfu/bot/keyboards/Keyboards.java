@@ -33,7 +33,26 @@ public class Keyboards {
                                             new KeyboardButton("Я понравился???"))),
                             new KeyboardRow(
                                     List.of(new KeyboardButton("Взаимные \uD83D\uDC9E"),
-                                            new KeyboardButton("Назад"))))
+                                            new KeyboardButton("Назад"))),
+                            new KeyboardRow(
+                                    List.of(new KeyboardButton("Фильтры"))))
+                    , true, false, false, " "
+            ));
+
+    /**
+     * Клавиатура доп меню, когда в просматриваемом списке симпатий есть следующая страница
+     */
+    public static final IKeyboard additionalMenuWithNext = new Keyboard(
+            new ReplyKeyboardMarkup(
+                    List.of(new KeyboardRow(
+                                    List.of(new KeyboardButton("Мои ❤️"),
+                                            new KeyboardButton("Я понравился???"))),
+                            new KeyboardRow(
+                                    List.of(new KeyboardButton("Взаимные \uD83D\uDC9E"),
+                                            new KeyboardButton("Назад"))),
+                            new KeyboardRow(
+                                    List.of(new KeyboardButton("Следующие"),
+                                            new KeyboardButton("Фильтры"))))
                     , true, false, false, " "
             ));
 
@@ -58,6 +77,31 @@ public class Keyboards {
                     .oneTimeKeyboard(true)
                     .build());
 
+    /**
+     * Клавиатура выбора пола в предпочтениях поиска
+     */
+    public static final IKeyboard preferredGenders = new Keyboard(
+            ReplyKeyboardMarkup.builder()
+                    .keyboardRow(new KeyboardRow(List.of(
+                            new KeyboardButton("Парней"),
+                            new KeyboardButton("Девушек"),
+                            new KeyboardButton("Non-Binary"),
+                            new KeyboardButton("Всех"))))
+                    .resizeKeyboard(true)
+                    .oneTimeKeyboard(true)
+                    .build());
+
+    /**
+     * Кнопка, чтобы не ограничивать поиск по возрасту или городу
+     */
+    public static final IKeyboard anyValue = new Keyboard(
+            ReplyKeyboardMarkup.builder()
+                    .keyboardRow(new KeyboardRow(List.of(
+                            new KeyboardButton("Любой"))))
+                    .resizeKeyboard(true)
+                    .oneTimeKeyboard(true)
+                    .build());
+
     /**
      * Кнопка ПОЕХАЛИ!
      */
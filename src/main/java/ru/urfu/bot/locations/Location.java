@@ -35,8 +35,23 @@ public class Location implements ILocation{
     }
 
     public Location(double longitude, double latitude) {
-        this.latitude = round(latitude, 2);
-        this.longitude = round(longitude, 2);
+        this(round(longitude, 2), round(latitude, 2), true);
+    }
+
+    private Location(double longitude, double latitude, boolean rounded) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Восстанавливает сохраненную локацию. Координаты округлялись при ее создании,
+     * а повторное округление через BigDecimal заметно замедляет восстановление миллиона профилей
+     * @param longitude уже округленная долгота
+     * @param latitude уже округленная широта
+     * @return локация
+     */
+    public static Location restore(double longitude, double latitude) {
+        return new Location(longitude, latitude, true);
     }
 
     /**
@@ -3,12 +3,15 @@ package ru.urfu.bot.locations;
 import ru.urfu.profile.Profile;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Класс, хранящий локации профилей, которые имеют локацию.
+ * Профили разложены по сетке ячеек, ключ ячейки - long из двух int-координат,
+ * поэтому поиск в радиусе просматривает только несколько соседних ячеек.
  */
 
 public class LocationData {
@@ -17,50 +20,131 @@ public class LocationData {
 
     private final double precision = oneKiloMeter;
 
-    private final Map<ILocation, List<Profile>> profilesInLocationMap;
+    /**
+     * Размер ячейки сетки в градусах (около 11 км)
+     */
+    private final double cellSize = 0.1;
+
+    private final Map<Long, List<Entry>> cells;
+    private final Map<Long, Long> cellOfProfile;
 
     public LocationData(){
-        profilesInLocationMap = new HashMap<>();
+        cells = new HashMap<>();
+        cellOfProfile = new HashMap<>();
     }
 
     /**
      * Позволяет получить пользователей в определенной локации
      * @param location локация
-     * @return возвращает список профилей
+     * @return возвращает список профилей или null, если там никого нет
      */
-    public List<Profile> getProfilesIn(ILocation location) {
-        return profilesInLocationMap.get(location);
+    public synchronized List<Profile> getProfilesIn(ILocation location) {
+        var cell = cells.get(cellKey(location.getLongitude(), location.getLatitude()));
+        if (cell == null) {
+            return null;
+        }
+
+        var list = new ArrayList<Profile>();
+        for (var entry : cell) {
+            if (location.equals(entry.location)) {
+                list.add(entry.profile);
+            }
+        }
+        return list.isEmpty() ? null : list;
     }
 
     /**
      * Позволяет получить пользователей в определенном радиусе от локации
      * @param location локация
      * @param radius радиус в километрах
-     * @return возвращает список профилей
+     * @return возвращает список профилей, отсортированный по удаленности
      */
     public List<Profile> getProfilesIn(ILocation location, int radius) {
-        var list = new ArrayList<Profile>();
-        for (int i = -radius; i <= radius; i++) {
-            for (int j = -radius; j <= radius; j++) {
-                var newLocation = new Location(location.getLongitude() + i * precision, location.getLatitude() + j * precision);
-                var getted = getProfilesIn(newLocation);
-                if (getted != null) {
-                    for (var e : getted) {
-                        if (!list.contains(e)) {
-                            list.add(e);
-                        }
+        return getProfilesIn(location, radius, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Позволяет получить ближайших пользователей в определенном радиусе от локации
+     * @param location локация
+     * @param radius радиус в километрах
+     * @param limit максимальное количество профилей
+     * @return возвращает не больше limit профилей, отсортированных по удаленности
+     */
+    public synchronized List<Profile> getProfilesIn(ILocation location, int radius, int limit) {
+        var found = new ArrayList<Entry>();
+        var maxDistance = radius * precision;
+        var longitude = location.getLongitude();
+        var latitude = location.getLatitude();
+
+        var minX = cellIndex(longitude - maxDistance);
+        var maxX = cellIndex(longitude + maxDistance);
+        var minY = cellIndex(latitude - maxDistance);
+        var maxY = cellIndex(latitude + maxDistance);
+
+        for (var x = minX; x <= maxX; x++) {
+            for (var y = minY; y <= maxY; y++) {
+                var cell = cells.get(cellKey(x, y));
+                if (cell == null) {
+                    continue;
+                }
+                for (var entry : cell) {
+                    if (location.FindDistanceTo(entry.location) <= maxDistance) {
+                        found.add(entry);
                     }
                 }
             }
         }
+
+        found.sort(Comparator.comparingDouble(entry -> location.FindDistanceTo(entry.location)));
+        var list = new ArrayList<Profile>(Math.min(found.size(), limit));
+        for (var i = 0; i < found.size() && i < limit; i++) {
+            list.add(found.get(i).profile);
+        }
         return list;
     }
 
-    public void addProfile(Profile p){
-        if (!profilesInLocationMap.containsKey(p.getLocation())) {
-            profilesInLocationMap.put(p.getLocation(), new ArrayList<>());
+    /**
+     * Добавляет профиль в сетку. Если профиль уже был добавлен с другой локацией, он переносится.
+     * @param p профиль с локацией
+     */
+    public synchronized void addProfile(Profile p){
+        var location = p.getLocation();
+        var key = cellKey(location.getLongitude(), location.getLatitude());
+        var oldKey = cellOfProfile.put(p.ID, key);
+
+        if (oldKey != null) {
+            var oldCell = cells.get(oldKey);
+            oldCell.removeIf(entry -> entry.profile.ID == p.ID);
+            if (oldCell.isEmpty()) {
+                cells.remove(oldKey);
+            }
         }
 
-        profilesInLocationMap.get(p.getLocation()).add(p);
+        cells.computeIfAbsent(key, k -> new ArrayList<>()).add(new Entry(p, location));
+    }
+
+    private int cellIndex(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private long cellKey(double longitude, double latitude) {
+        return cellKey(cellIndex(longitude), cellIndex(latitude));
+    }
+
+    private static long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Профиль вместе с локацией, с которой он был добавлен в сетку
+     */
+    private static class Entry {
+        final Profile profile;
+        final ILocation location;
+
+        Entry(Profile profile, ILocation location) {
+            this.profile = profile;
+            this.location = location;
+        }
     }
 }
@@ -0,0 +1,88 @@
+package ru.urfu.bot.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма задержек с логарифмическими корзинами, как в HdrHistogram.
+ * Каждая степень двойки делится на 16 корзин, поэтому перцентиль отличается от точного не больше чем на 1/16.
+ * Запись - это пара атомарных инкрементов без блокировок и выделения памяти
+ */
+
+public class Histogram {
+    private static final int subBucketBits = 4;
+    private static final int subBuckets = 1 << subBucketBits;
+    private static final int bucketCount = (65 - subBucketBits) * subBuckets;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketCount);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param value значение, например задержка в наносекундах. Отрицательные считаются нулем
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        var count = getCount();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * @param quantile доля от 0 до 1
+     * @return верхняя граница корзины, в которую попал перцентиль, но не больше максимума. 0, если замеров нет
+     */
+    public long getPercentile(double quantile) {
+        var count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        var rank = Math.max(1, (long) Math.ceil(quantile * count));
+        var seen = 0L;
+        for (var bucket = 0; bucket < bucketCount; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBound(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucketOf(long value) {
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var sub = (int) (value >>> (exponent - subBucketBits)) & (subBuckets - 1);
+        return ((exponent - subBucketBits + 1) << subBucketBits) + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        var exponent = (bucket >>> subBucketBits) + subBucketBits - 1;
+        if (exponent >= 62) {
+            return Long.MAX_VALUE;
+        }
+        var sub = bucket & (subBuckets - 1);
+        var width = 1L << (exponent - subBucketBits);
+        return ((long) (subBuckets + sub) << (exponent - subBucketBits)) + width - 1;
+    }
+}
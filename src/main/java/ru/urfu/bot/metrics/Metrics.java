@@ -0,0 +1,73 @@
+package ru.urfu.bot.metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеры горячих путей бота. Включаются переменной среды METRICS_LOG_SECONDS:
+ * тогда сводка печатается в лог раз в указанное количество секунд. Сводку можно получить и вручную через dump().
+ * Когда замеры выключены, enabled - константа false, и JIT выбрасывает весь код замеров
+ */
+
+public class Metrics {
+    private static final long logSeconds = parseSeconds(System.getenv("METRICS_LOG_SECONDS"));
+
+    public static final boolean enabled = logSeconds > 0;
+
+    private static final MetricsRegistry registry = enabled ? new MetricsRegistry() : null;
+
+    static {
+        if (enabled) {
+            var scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "metrics-log");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(() -> System.out.print(dump()), logSeconds, logSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return время начала этапа или 0, если замеры выключены
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Записывает время этапа от start() до текущего момента
+     * @param stage этап
+     * @param telegram true для Telegram, false для Discord
+     * @param label метка, например команда
+     * @param start результат start()
+     */
+    public static void record(Stage stage, boolean telegram, String label, long start) {
+        if (enabled) {
+            registry.record(stage, telegram, label, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Учитывает ошибку на этапе
+     */
+    public static void fail(Stage stage, boolean telegram, String label) {
+        if (enabled) {
+            registry.fail(stage, telegram, label);
+        }
+    }
+
+    /**
+     * @return сводка по всем этапам или пустая строка, если замеры выключены
+     */
+    public static String dump() {
+        return enabled ? registry.dump() : "";
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return value == null ? 0 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ru.urfu.bot.metrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Набор гистограмм и счетчиков ошибок с разбивкой по этапу, платформе и метке (обычно команде)
+ */
+
+public class MetricsRegistry {
+    private final Map<Stage, Map<String, Cell>[]> cells = new EnumMap<>(Stage.class);
+
+    @SuppressWarnings("unchecked")
+    public MetricsRegistry() {
+        for (var stage : Stage.values()) {
+            cells.put(stage, new Map[] {new ConcurrentHashMap<String, Cell>(), new ConcurrentHashMap<String, Cell>()});
+        }
+    }
+
+    /**
+     * Записывает время этапа
+     * @param stage этап
+     * @param telegram true для Telegram, false для Discord
+     * @param label метка, например команда
+     * @param nanos время в наносекундах
+     */
+    public void record(Stage stage, boolean telegram, String label, long nanos) {
+        cell(stage, telegram, label).histogram.record(nanos);
+    }
+
+    /**
+     * Учитывает ошибку на этапе
+     */
+    public void fail(Stage stage, boolean telegram, String label) {
+        cell(stage, telegram, label).failures.increment();
+    }
+
+    /**
+     * @return гистограмма этапа или null, если замеров еще не было
+     */
+    public Histogram getHistogram(Stage stage, boolean telegram, String label) {
+        var cell = cells.get(stage)[telegram ? 0 : 1].get(label);
+        return cell == null ? null : cell.histogram;
+    }
+
+    /**
+     * @return количество ошибок этапа
+     */
+    public long getFailures(Stage stage, boolean telegram, String label) {
+        var cell = cells.get(stage)[telegram ? 0 : 1].get(label);
+        return cell == null ? 0 : cell.failures.sum();
+    }
+
+    /**
+     * Сводка по всем этапам: количество, среднее и перцентили в миллисекундах, ошибки. Замеры копятся с запуска
+     * @return текст сводки
+     */
+    public String dump() {
+        var builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%-7s %-9s %-13s %9s %9s %9s %9s %9s %9s %7s%n",
+                "этап", "платформа", "метка", "кол-во", "среднее", "p50", "p99", "p999", "max", "ошибки"));
+        for (var stage : Stage.values()) {
+            for (var platform = 0; platform < 2; platform++) {
+                for (var entry : new TreeMap<>(cells.get(stage)[platform]).entrySet()) {
+                    var histogram = entry.getValue().histogram;
+                    builder.append(String.format(Locale.ROOT, "%-7s %-9s %-13s %9d %9.3f %9.3f %9.3f %9.3f %9.3f %7d%n",
+                            stage, platform == 0 ? "telegram" : "discord", entry.getKey(),
+                            histogram.getCount(),
+                            histogram.getMean() / 1e6,
+                            histogram.getPercentile(0.5) / 1e6,
+                            histogram.getPercentile(0.99) / 1e6,
+                            histogram.getPercentile(0.999) / 1e6,
+                            histogram.getMax() / 1e6,
+                            entry.getValue().failures.sum()));
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private Cell cell(Stage stage, boolean telegram, String label) {
+        var map = cells.get(stage)[telegram ? 0 : 1];
+        var cell = map.get(label);
+        return cell != null ? cell : map.computeIfAbsent(label, key -> new Cell());
+    }
+
+    /**
+     * Гистограмма и счетчик ошибок одной метки
+     */
+    private static class Cell {
+        final Histogram histogram = new Histogram();
+        final LongAdder failures = new LongAdder();
+    }
+}
@@ -0,0 +1,32 @@
+package ru.urfu.bot.metrics;
+
+/**
+ * Этапы обработки апдейта, время которых замеряется
+ */
+
+public enum Stage {
+    /**
+     * Перевод апдейта платформы во внутренний
+     */
+    convert,
+    /**
+     * Ожидание в очереди диспетчера
+     */
+    queue,
+    /**
+     * Обработка апдейта в UpdateHandler целиком
+     */
+    handle,
+    /**
+     * Выбор следующей анкеты
+     */
+    select,
+    /**
+     * Запись лайка в граф
+     */
+    like,
+    /**
+     * От постановки сообщения в очередь отправки до доставки
+     */
+    send
+}
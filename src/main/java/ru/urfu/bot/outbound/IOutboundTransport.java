@@ -0,0 +1,15 @@
+package ru.urfu.bot.outbound;
+
+/**
+ * Способ доставить исходящее сообщение на платформу (Telegram, Discord или заглушка в тестах)
+ */
+
+public interface IOutboundTransport {
+    /**
+     * Отправляет сообщение и ждет ответа платформы
+     * @param message сообщение
+     * @throws RetryAfterException если платформа просит подождать перед повтором
+     * @throws Exception если отправить не удалось
+     */
+    void send(OutboundMessage message) throws Exception;
+}
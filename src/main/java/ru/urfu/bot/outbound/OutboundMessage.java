@@ -0,0 +1,156 @@
+package ru.urfu.bot.outbound;
+
+import ru.urfu.bot.keyboards.IKeyboard;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToIntFunction;
+
+/**
+ * Исходящее сообщение: текст, фото с подписью или альбом из нескольких фото, необязательно с клавиатурой.
+ * Пока сообщение ждет в очереди, к нему можно дописать следующий текст в тот же чат.
+ */
+
+public class OutboundMessage {
+    /**
+     * Максимальное количество фото в альбоме Telegram
+     */
+    public static final int maxAlbumSize = 10;
+
+    private final long chatId;
+    private final String photoLink;
+    private final List<String> albumLinks;
+    private final List<String> albumCaptions;
+    private String text;
+    private IKeyboard keyboard;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private int attempts;
+
+    private OutboundMessage(long chatId, String text, IKeyboard keyboard, String photoLink,
+                            List<String> albumLinks, List<String> albumCaptions) {
+        this.chatId = chatId;
+        this.text = text;
+        this.keyboard = keyboard;
+        this.photoLink = photoLink;
+        this.albumLinks = albumLinks;
+        this.albumCaptions = albumCaptions;
+    }
+
+    /**
+     * @param chatId id чата
+     * @param text текст
+     * @param keyboard клавиатура или null
+     * @return текстовое сообщение
+     */
+    public static OutboundMessage text(long chatId, String text, IKeyboard keyboard) {
+        return new OutboundMessage(chatId, text, keyboard, null, null, null);
+    }
+
+    /**
+     * @param chatId id чата
+     * @param photoLink file_id или ссылка на фото
+     * @param caption подпись
+     * @param keyboard клавиатура или null
+     * @return сообщение с фото
+     */
+    public static OutboundMessage photo(long chatId, String photoLink, String caption, IKeyboard keyboard) {
+        return new OutboundMessage(chatId, caption, keyboard, photoLink, null, null);
+    }
+
+    /**
+     * Альбом уходит одним запросом. Клавиатуру к альбому прикрепить нельзя
+     * @param chatId id чата
+     * @param photoLinks file_id или ссылки на фото, не больше maxAlbumSize
+     * @param captions подписи к фото в том же порядке
+     * @return альбом
+     */
+    public static OutboundMessage album(long chatId, List<String> photoLinks, List<String> captions) {
+        if (photoLinks.size() > maxAlbumSize || photoLinks.size() != captions.size()) {
+            throw new IllegalArgumentException("В альбоме может быть до " + maxAlbumSize + " фото с подписями");
+        }
+        return new OutboundMessage(chatId, String.join("\n\n", captions), null, null,
+                List.copyOf(photoLinks), List.copyOf(captions));
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    /**
+     * @return текст сообщения или подпись к фото
+     */
+    public String getText() {
+        return text;
+    }
+
+    public IKeyboard getKeyboard() {
+        return keyboard;
+    }
+
+    /**
+     * @return file_id или ссылка на фото, null для текстового сообщения
+     */
+    public String getPhotoLink() {
+        return photoLink;
+    }
+
+    public boolean hasPhoto() {
+        return photoLink != null;
+    }
+
+    public boolean isAlbum() {
+        return albumLinks != null;
+    }
+
+    /**
+     * @return file_id или ссылки на фото альбома
+     */
+    public List<String> getAlbumLinks() {
+        return albumLinks;
+    }
+
+    /**
+     * @return подписи к фото альбома
+     */
+    public List<String> getAlbumCaptions() {
+        return albumCaptions;
+    }
+
+    /**
+     * @return завершается, когда сообщение доставлено или отправить его не удалось
+     */
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    /**
+     * Дописывает следующий текст в это сообщение, если оба сообщения текстовые и вместе не длиннее лимита.
+     * Остается последняя клавиатура
+     * @param next следующее сообщение в тот же чат
+     * @param textLimit максимальная длина текста на платформе при заданной клавиатуре
+     * @return true, если текст дописан
+     */
+    boolean tryMerge(OutboundMessage next, ToIntFunction<IKeyboard> textLimit) {
+        if (hasPhoto() || next.hasPhoto() || isAlbum() || next.isAlbum()) {
+            return false;
+        }
+        var mergedKeyboard = next.keyboard != null ? next.keyboard : keyboard;
+        if (text.length() + next.text.length() + 2 > textLimit.applyAsInt(mergedKeyboard)) {
+            return false;
+        }
+        text = text + "\n\n" + next.text;
+        keyboard = mergedKeyboard;
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                next.future.completeExceptionally(error);
+            } else {
+                next.future.complete(null);
+            }
+        });
+        return true;
+    }
+
+    int nextAttempt() {
+        return ++attempts;
+    }
+}
@@ -0,0 +1,269 @@
+package ru.urfu.bot.outbound;
+
+import ru.urfu.bot.keyboards.IKeyboard;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * Очередь исходящих сообщений одной платформы.
+ * У каждого чата своя очередь и свое ведро токенов, кроме того есть общее ведро на всю платформу.
+ * Сообщения одного чата уходят по порядку, подряд идущие тексты склеиваются в одно сообщение,
+ * а если платформа просит подождать (retry-after), сообщение возвращается в начало очереди чата.
+ * Отправка идет в фоновых потоках, вызывающий код сразу получает CompletableFuture.
+ */
+
+public class OutboundQueue {
+    private static final int maxAttempts = 5;
+
+    /**
+     * Максимальная длина текста сообщения в Telegram
+     */
+    public static final int telegramTextLength = 4096;
+
+    /**
+     * Максимальная длина сообщения в Discord. Клавиатура в Discord выводится текстом под сообщением и входит в лимит
+     */
+    public static final int discordTextLength = 2000;
+
+    private final IOutboundTransport transport;
+    private final TokenBucket global;
+    private final double chatPerSecond;
+    private final int chatBurst;
+    private final ToIntFunction<IKeyboard> textLimit;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Long, ChatQueue> chats = new ConcurrentHashMap<>();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param transport через что отправлять
+     * @param globalPerSecond сколько сообщений в секунду можно отправить во все чаты
+     * @param chatPerSecond сколько сообщений в секунду можно отправить в один чат
+     * @param chatBurst сколько сообщений подряд можно отправить в один чат
+     * @param threads сколько потоков отправляют сообщения
+     */
+    public OutboundQueue(IOutboundTransport transport, double globalPerSecond, double chatPerSecond, int chatBurst, int threads) {
+        this(transport, globalPerSecond, chatPerSecond, chatBurst, threads, keyboard -> telegramTextLength);
+    }
+
+    /**
+     * @param transport через что отправлять
+     * @param globalPerSecond сколько сообщений в секунду можно отправить во все чаты
+     * @param chatPerSecond сколько сообщений в секунду можно отправить в один чат
+     * @param chatBurst сколько сообщений подряд можно отправить в один чат
+     * @param threads сколько потоков отправляют сообщения
+     * @param textLimit сколько символов текста может быть в склеенном сообщении с заданной клавиатурой
+     */
+    public OutboundQueue(IOutboundTransport transport, double globalPerSecond, double chatPerSecond, int chatBurst, int threads,
+                         ToIntFunction<IKeyboard> textLimit) {
+        this.transport = transport;
+        this.textLimit = textLimit;
+        this.global = new TokenBucket(globalPerSecond, (int) Math.max(1, globalPerSecond), System.nanoTime());
+        this.chatPerSecond = chatPerSecond;
+        this.chatBurst = chatBurst;
+
+        var number = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "outbound-" + number.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Очередь с ограничениями Telegram: 30 сообщений в секунду всего и 1 сообщение в секунду в чат
+     * @param transport через что отправлять
+     * @return очередь
+     */
+    public static OutboundQueue telegram(IOutboundTransport transport) {
+        return new OutboundQueue(transport, 30, 1, 3, 8, keyboard -> telegramTextLength);
+    }
+
+    /**
+     * Очередь для Discord. JDA сама соблюдает ограничения Discord, поэтому лимиты здесь мягче
+     * @param transport через что отправлять
+     * @return очередь
+     */
+    public static OutboundQueue discord(IOutboundTransport transport) {
+        return new OutboundQueue(transport, 50, 5, 5, 4, OutboundQueue::discordTextLimit);
+    }
+
+    /**
+     * DiscordMessageSender дописывает клавиатуру под текст через перевод строки, поэтому она вычитается из лимита
+     */
+    static int discordTextLimit(IKeyboard keyboard) {
+        return keyboard == null ? discordTextLength
+                : discordTextLength - 1 - keyboard.getDiscordKeyboard().getKeyboard().length();
+    }
+
+    /**
+     * Ставит сообщение в очередь его чата
+     * @param message сообщение
+     * @return завершается, когда сообщение доставлено или отправить его не удалось
+     */
+    public CompletableFuture<Void> submit(OutboundMessage message) {
+        var start = new boolean[1];
+        chats.compute(message.getChatId(), (id, chat) -> {
+            if (chat == null) {
+                var now = System.nanoTime();
+                chat = new ChatQueue(new TokenBucket(chatPerSecond, chatBurst, now), now);
+            }
+            var last = chat.pending.peekLast();
+            if (last != null && last.tryMerge(message, textLimit)) {
+                coalesced.increment();
+            } else {
+                chat.pending.add(message);
+            }
+            if (!chat.scheduled) {
+                chat.scheduled = true;
+                start[0] = true;
+            }
+            return chat;
+        });
+        if (start[0]) {
+            scheduler.execute(() -> drain(message.getChatId()));
+        }
+        return message.getFuture();
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getRetriedCount() {
+        return retried.sum();
+    }
+
+    /**
+     * @return сколько сообщений было дописано в предыдущие вместо отдельной отправки
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return сколько чатов сейчас ждут отправки
+     */
+    public int getActiveChats() {
+        return chats.size();
+    }
+
+    /**
+     * Отправляет сообщения чата, пока позволяют ведра токенов.
+     * Если токенов нет, отправка чата откладывается до их появления.
+     * Когда очередь пустеет, отправка чата заканчивается, и следующее сообщение запустит ее сразу.
+     * Сам чат удаляется позже, когда его ведро снова полное
+     */
+    private void drain(long chatId) {
+        while (true) {
+            var next = new OutboundMessage[1];
+            var wait = new long[1];
+            var idle = new boolean[1];
+            var now = System.nanoTime();
+
+            chats.computeIfPresent(chatId, (id, chat) -> {
+                if (chat.pending.isEmpty()) {
+                    chat.scheduled = false;
+                    idle[0] = true;
+                    wait[0] = chat.bucket.untilFull(now);
+                    return wait[0] > 0 ? chat : null;
+                }
+                wait[0] = Math.max(chat.blockedUntil - now, chat.bucket.delay(now));
+                if (wait[0] <= 0) {
+                    wait[0] = global.tryAcquire(now);
+                }
+                if (wait[0] <= 0) {
+                    chat.bucket.tryAcquire(now);
+                    next[0] = chat.pending.poll();
+                }
+                return chat;
+            });
+
+            if (next[0] == null) {
+                if (wait[0] > 0) {
+                    Runnable task = idle[0] ? () -> removeIfIdle(chatId) : () -> drain(chatId);
+                    scheduler.schedule(task, wait[0], TimeUnit.NANOSECONDS);
+                }
+                return;
+            }
+            send(chatId, next[0]);
+        }
+    }
+
+    /**
+     * Удаляет чат без сообщений, когда его ведро наполнилось. Если за это время пришли новые сообщения,
+     * их уже отправляет drain, и он сам удалит чат, когда очередь опустеет
+     */
+    private void removeIfIdle(long chatId) {
+        var wait = new long[1];
+        chats.computeIfPresent(chatId, (id, chat) -> {
+            if (chat.scheduled || !chat.pending.isEmpty()) {
+                return chat;
+            }
+            wait[0] = chat.bucket.untilFull(System.nanoTime());
+            return wait[0] > 0 ? chat : null;
+        });
+        if (wait[0] > 0) {
+            scheduler.schedule(() -> removeIfIdle(chatId), wait[0], TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void send(long chatId, OutboundMessage message) {
+        try {
+            transport.send(message);
+            sent.increment();
+            message.getFuture().complete(null);
+        } catch (RetryAfterException e) {
+            if (message.nextAttempt() >= maxAttempts) {
+                fail(message, e);
+                return;
+            }
+            retried.increment();
+            var blockedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(e.getRetryAfterMillis());
+            chats.computeIfPresent(chatId, (id, chat) -> {
+                chat.blockedUntil = blockedUntil;
+                chat.pending.addFirst(message);
+                return chat;
+            });
+        } catch (Exception e) {
+            fail(message, e);
+        }
+    }
+
+    private void fail(OutboundMessage message, Exception e) {
+        failed.increment();
+        e.printStackTrace();
+        message.getFuture().completeExceptionally(e);
+    }
+
+    /**
+     * Сообщения одного чата, ожидающие отправки
+     */
+    private static class ChatQueue {
+        final ArrayDeque<OutboundMessage> pending = new ArrayDeque<>();
+        final TokenBucket bucket;
+        long blockedUntil;
+        boolean scheduled;
+
+        ChatQueue(TokenBucket bucket, long now) {
+            this.bucket = bucket;
+            this.blockedUntil = now;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.urfu.bot.outbound;
+
+/**
+ * Платформа ограничила частоту запросов и просит повторить отправку позже
+ */
+
+public class RetryAfterException extends Exception {
+    private final long retryAfterMillis;
+
+    /**
+     * @param retryAfterMillis через сколько миллисекунд можно повторить
+     * @param cause исходная ошибка платформы
+     */
+    public RetryAfterException(long retryAfterMillis, Throwable cause) {
+        super("Повтор через " + retryAfterMillis + " мс", cause);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
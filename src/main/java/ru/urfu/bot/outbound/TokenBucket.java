@@ -0,0 +1,63 @@
+package ru.urfu.bot.outbound;
+
+/**
+ * Ведро токенов: пополняется с постоянной скоростью и вмещает не больше burst токенов.
+ * Время передается снаружи в наносекундах, поэтому ведро легко проверять в тестах.
+ */
+
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long updatedAt;
+
+    /**
+     * @param perSecond сколько токенов добавляется в секунду
+     * @param burst сколько токенов можно потратить подряд
+     * @param now текущее время в наносекундах
+     */
+    public TokenBucket(double perSecond, int burst, long now) {
+        this.tokensPerNano = perSecond / 1e9;
+        this.capacity = burst;
+        this.tokens = burst;
+        this.updatedAt = now;
+    }
+
+    /**
+     * @param now текущее время в наносекундах
+     * @return сколько наносекунд ждать до следующего токена, 0 если токен уже есть
+     */
+    public synchronized long delay(long now) {
+        refill(now);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Забирает токен, если он есть
+     * @param now текущее время в наносекундах
+     * @return 0, если токен забран, иначе сколько наносекунд ждать
+     */
+    public synchronized long tryAcquire(long now) {
+        var delay = delay(now);
+        if (delay == 0) {
+            tokens -= 1;
+        }
+        return delay;
+    }
+
+    /**
+     * @param now текущее время в наносекундах
+     * @return сколько наносекунд ждать, пока ведро не заполнится. После этого его можно забыть без потери ограничения
+     */
+    public synchronized long untilFull(long now) {
+        refill(now);
+        return tokens >= capacity ? 0 : (long) Math.ceil((capacity - tokens) / tokensPerNano);
+    }
+
+    private void refill(long now) {
+        if (now > updatedAt) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * tokensPerNano);
+            updatedAt = now;
+        }
+    }
+}
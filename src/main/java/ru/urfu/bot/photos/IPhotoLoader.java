@@ -0,0 +1,15 @@
+package ru.urfu.bot.photos;
+
+import java.io.IOException;
+
+/**
+ * Загружает байты фото по ссылке, когда их нет в кэше
+ */
+
+public interface IPhotoLoader {
+    /**
+     * @param sourceId ссылка или id фото на платформе-источнике
+     * @return байты фото
+     */
+    byte[] load(String sourceId) throws IOException;
+}
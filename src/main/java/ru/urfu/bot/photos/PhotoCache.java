@@ -0,0 +1,374 @@
+package ru.urfu.bot.photos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш фото профилей, адресуемый по содержимому: ключ - SHA-256 байтов фото,
+ * поэтому одно и то же фото из разных источников хранится один раз.
+ * Два уровня: память и необязательный каталог на диске, у каждого свой лимит в байтах
+ * и вытеснение давно не использованных фото (LRU). Фото, вытесненное из памяти, остается на диске
+ * и при следующем обращении поднимается обратно в память.
+ * Кроме байтов кэш помнит, какой хэш у ссылки источника и под каким id фото уже загружено на платформы,
+ * например file_id в Telegram, чтобы не загружать его повторно.
+ * Под монитором кэша меняются только индексы LRU, чтение и запись файлов идут вне его,
+ * поэтому медленный диск не задерживает обращения к фото из памяти.
+ * Промахи по одному источнику схлопываются: фото загружает первый поток, остальные ждут его результат.
+ */
+
+public class PhotoCache {
+    private final long memoryLimit;
+    private final long diskLimit;
+    private final Path directory;
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    private final Map<String, String> hashBySource = new ConcurrentHashMap<>();
+    private final Map<String, String> uploadIds = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<byte[]>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Кэш только в памяти
+     * @param memoryLimit сколько байтов фото держать в памяти
+     */
+    public PhotoCache(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = 0;
+        this.directory = null;
+    }
+
+    /**
+     * Кэш в памяти и на диске. Фото, уже лежащие в каталоге, подхватываются, начиная с самых старых
+     * @param memoryLimit сколько байтов фото держать в памяти
+     * @param directory каталог для фото
+     * @param diskLimit сколько байтов фото держать на диске
+     */
+    public PhotoCache(long memoryLimit, Path directory, long diskLimit) throws IOException {
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+        this.directory = directory;
+
+        Files.createDirectories(directory);
+        try (var files = Files.list(directory)) {
+            var existing = files
+                    .filter(file -> isHash(file.getFileName().toString()))
+                    .sorted(Comparator.comparingLong(PhotoCache::lastModified))
+                    .collect(Collectors.toList());
+            for (var file : existing) {
+                var size = Files.size(file);
+                disk.put(file.getFileName().toString(), size);
+                diskBytes += size;
+            }
+        }
+        deleteFiles(evictDisk());
+    }
+
+    /**
+     * Кэш из переменных среды: PHOTO_CACHE_DIR включает дисковый уровень на 1 ГБ, в памяти держится 64 МБ
+     * @return кэш
+     */
+    public static PhotoCache fromEnvironment() {
+        var memoryLimit = 64L << 20;
+        var directory = System.getenv("PHOTO_CACHE_DIR");
+        if (directory == null) {
+            return new PhotoCache(memoryLimit);
+        }
+        try {
+            return new PhotoCache(memoryLimit, Path.of(directory), 1L << 30);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Кладет фото в кэш
+     * @param sourceId ссылка или id фото на платформе-источнике
+     * @param bytes байты фото
+     * @return хэш содержимого
+     */
+    public String put(String sourceId, byte[] bytes) {
+        var hash = hash(bytes);
+        boolean write;
+        synchronized (this) {
+            putInMemory(hash, bytes);
+            write = directory != null && bytes.length <= diskLimit && !disk.containsKey(hash);
+        }
+        if (write && writeToDisk(hash, bytes)) {
+            List<String> evicted;
+            synchronized (this) {
+                if (disk.put(hash, (long) bytes.length) == null) {
+                    diskBytes += bytes.length;
+                }
+                evicted = evictDisk();
+            }
+            deleteFiles(evicted);
+        }
+        hashBySource.put(sourceId, hash);
+        return hash;
+    }
+
+    /**
+     * @param hash хэш содержимого
+     * @return байты фото или null, если их нет ни в памяти, ни на диске
+     */
+    public byte[] get(String hash) {
+        synchronized (this) {
+            var bytes = memory.get(hash);
+            if (bytes != null) {
+                memoryHits.increment();
+                return bytes;
+            }
+            if (disk.get(hash) == null) {
+                misses.increment();
+                return null;
+            }
+        }
+
+        var bytes = readFromDisk(hash);
+        synchronized (this) {
+            if (bytes != null) {
+                diskHits.increment();
+                putInMemory(hash, bytes);
+                return bytes;
+            }
+            var size = disk.remove(hash);
+            if (size != null) {
+                diskBytes -= size;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @param sourceId ссылка или id фото на платформе-источнике
+     * @return байты фото или null, если фото из этого источника еще не кэшировалось
+     */
+    public byte[] getBySource(String sourceId) {
+        var hash = hashBySource.get(sourceId);
+        if (hash == null) {
+            misses.increment();
+            return null;
+        }
+        return get(hash);
+    }
+
+    /**
+     * Достает фото из кэша, а если его там нет, загружает и кладет в кэш.
+     * Если то же фото уже загружается в другом потоке, ждет эту загрузку вместо своей
+     * @param sourceId ссылка или id фото на платформе-источнике
+     * @param loader чем загружать при промахе
+     * @return байты фото
+     */
+    public byte[] fetch(String sourceId, IPhotoLoader loader) throws IOException {
+        var bytes = getBySource(sourceId);
+        if (bytes != null) {
+            return bytes;
+        }
+
+        var load = new CompletableFuture<byte[]>();
+        var running = loading.putIfAbsent(sourceId, load);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            bytes = loader.load(sourceId);
+            put(sourceId, bytes);
+            load.complete(bytes);
+            return bytes;
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(sourceId, load);
+        }
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> load) throws IOException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new IOException(e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param sourceId ссылка или id фото на платформе-источнике
+     * @return хэш содержимого или null
+     */
+    public String getHash(String sourceId) {
+        return hashBySource.get(sourceId);
+    }
+
+    /**
+     * Запоминает, под каким id фото уже загружено на платформу.
+     * Если байты фото кэшировались, id привязывается к содержимому, иначе к ссылке источника
+     * @param platform платформа, например "telegram"
+     * @param sourceId ссылка или id фото на платформе-источнике
+     * @param uploadId id загруженного фото на платформе
+     */
+    public void putUploadId(String platform, String sourceId, String uploadId) {
+        uploadIds.put(uploadKey(platform, sourceId), uploadId);
+    }
+
+    /**
+     * @param platform платформа, например "telegram"
+     * @param sourceId ссылка или id фото на платформе-источнике
+     * @return id уже загруженного фото или null
+     */
+    public String getUploadId(String platform, String sourceId) {
+        return uploadIds.get(uploadKey(platform, sourceId));
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return сколько фото было вытеснено из памяти или с диска
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    private String uploadKey(String platform, String sourceId) {
+        return platform + ':' + hashBySource.getOrDefault(sourceId, sourceId);
+    }
+
+    private void putInMemory(String hash, byte[] bytes) {
+        if (bytes.length > memoryLimit) {
+            return;
+        }
+        var old = memory.put(hash, bytes);
+        if (old == null) {
+            memoryBytes += bytes.length;
+        }
+        var iterator = memory.entrySet().iterator();
+        while (memoryBytes > memoryLimit && iterator.hasNext()) {
+            var eldest = iterator.next();
+            memoryBytes -= eldest.getValue().length;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Пишет фото во временный файл и атомарно переименовывает его, поэтому читатель не увидит недописанный файл.
+     * Временный файл у каждого потока свой, так что одновременная запись одного фото безопасна
+     * @return true, если фото записано
+     */
+    private boolean writeToDisk(String hash, byte[] bytes) {
+        try {
+            var temporary = directory.resolve(hash + "." + Thread.currentThread().getId() + ".tmp");
+            Files.write(temporary, bytes);
+            Files.move(temporary, directory.resolve(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private byte[] readFromDisk(String hash) {
+        try {
+            return Files.readAllBytes(directory.resolve(hash));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Убирает из индекса диска давно не использованные фото, пока они не влезут в лимит.
+     * Вызывается под монитором, а сами файлы удаляет deleteFiles уже вне его
+     * @return хэши фото, файлы которых нужно удалить
+     */
+    private List<String> evictDisk() {
+        var evicted = new ArrayList<String>();
+        var iterator = disk.entrySet().iterator();
+        while (diskBytes > diskLimit && iterator.hasNext()) {
+            var eldest = iterator.next();
+            evicted.add(eldest.getKey());
+            diskBytes -= eldest.getValue();
+            iterator.remove();
+            evictions.increment();
+        }
+        return evicted;
+    }
+
+    private void deleteFiles(List<String> hashes) {
+        for (var hash : hashes) {
+            try {
+                Files.deleteIfExists(directory.resolve(hash));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            var hex = new StringBuilder(digest.length * 2);
+            for (var b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isHash(String name) {
+        return name.length() == 64 && name.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
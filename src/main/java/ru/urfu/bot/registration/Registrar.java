@@ -46,6 +46,7 @@ public class Registrar {
             profilesInRegistration.put(id, new ProfileInRegistration(profile));
 
             profile.setUserName(update.getMessage().getFrom().getUserName());
+            profile.setFromTelegram(update.isFromTelegram());
 
             MessageSender.sendMessage(
                     "Тебя нет в нашей базе, давай зарегистрируемся\n\nНапиши свое имя:)", update);
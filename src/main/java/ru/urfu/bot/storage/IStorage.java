@@ -0,0 +1,30 @@
+package ru.urfu.bot.storage;
+
+import ru.urfu.profile.Profile;
+
+/**
+ * Интерфейс хранилища, в которое записываются профили и симпатии, чтобы пережить перезапуск бота
+ */
+
+public interface IStorage {
+    void saveProfile(Profile profile);
+
+    void saveLike(long likerId, long likedId);
+
+    void saveUnlike(long likerId, long likedId);
+
+    /**
+     * Проигрывает сохраненные записи в порядке их записи
+     * @param listener кому отдавать записи
+     */
+    void recover(IStorageListener listener);
+
+    /**
+     * Сколько профилей примерно вернет recover. Нужно, чтобы сразу выделить таблицы нужного размера,
+     * а не растить их по ходу восстановления
+     * @return оценка или 0, если она неизвестна
+     */
+    default int expectedProfileCount() {
+        return 0;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.urfu.bot.storage;
+
+import ru.urfu.profile.Profile;
+
+/**
+ * Интерфейс получателя записей при восстановлении из хранилища
+ */
+
+public interface IStorageListener {
+    void onProfile(Profile profile);
+
+    void onLike(long likerId, long likedId);
+
+    void onUnlike(long likerId, long likedId);
+}
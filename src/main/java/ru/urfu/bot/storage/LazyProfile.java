@@ -0,0 +1,162 @@
+package ru.urfu.bot.storage;
+
+import ru.urfu.profile.Profile;
+import ru.urfu.profile.SearchPreferences;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Профиль из снимка, строковые поля которого читаются из отображенного в память файла при первом обращении
+ */
+
+class LazyProfile extends Profile {
+    private ByteBuffer strings;
+    private final MappedSnapshot snapshot;
+
+    LazyProfile(long id, ByteBuffer strings, MappedSnapshot snapshot) {
+        super(id);
+        this.strings = strings;
+        this.snapshot = snapshot;
+    }
+
+    private synchronized void load() {
+        if (strings == null) {
+            return;
+        }
+        var bytes = new byte[strings.remaining()];
+        strings.get(bytes);
+        strings = null;
+        try {
+            var in = new DataInputStream(new ByteArrayInputStream(bytes));
+            ProfileCodec.readStrings(this, in);
+            ProfileCodec.readPreferences(this, in);
+            ProfileCodec.readPlatform(this, in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return прочитаны ли уже строки профиля
+     */
+    synchronized boolean isLoaded() {
+        return strings == null;
+    }
+
+    /**
+     * Чтение строк меняет версию профиля, поэтому перед выдачей версии строки дочитываются
+     */
+    @Override
+    public int getVersion() {
+        load();
+        return super.getVersion();
+    }
+
+    @Override
+    public String getTelegramUserName() {
+        load();
+        return super.getTelegramUserName();
+    }
+
+    @Override
+    public void setUserName(String telegramName) {
+        load();
+        super.setUserName(telegramName);
+    }
+
+    @Override
+    public String getName() {
+        load();
+        return super.getName();
+    }
+
+    @Override
+    public void setName(String name) {
+        load();
+        super.setName(name);
+    }
+
+    @Override
+    public String getDescription() {
+        load();
+        return super.getDescription();
+    }
+
+    @Override
+    public void setDescription(String description) {
+        load();
+        super.setDescription(description);
+    }
+
+    @Override
+    public String getPhotoLink() {
+        load();
+        return super.getPhotoLink();
+    }
+
+    @Override
+    public void setPhotoLink(String photoLink) {
+        load();
+        super.setPhotoLink(photoLink);
+    }
+
+    @Override
+    public String getCity() {
+        load();
+        return super.getCity();
+    }
+
+    /**
+     * Ключ города нужен индексу предпочтений при восстановлении, поэтому он берется у снимка по байтам записи
+     * без разбора остальных строк, чтобы не терять ленивость снимка
+     */
+    @Override
+    public String getCityKey() {
+        synchronized (this) {
+            if (strings != null) {
+                return snapshot.cityKey(strings);
+            }
+        }
+        return super.getCityKey();
+    }
+
+    @Override
+    public void setCity(String city) {
+        load();
+        super.setCity(city);
+    }
+
+    @Override
+    public SearchPreferences getPreferences() {
+        load();
+        return super.getPreferences();
+    }
+
+    @Override
+    public void setPreferences(SearchPreferences preferences) {
+        load();
+        super.setPreferences(preferences);
+    }
+
+    @Override
+    public boolean isFromTelegram() {
+        load();
+        return super.isFromTelegram();
+    }
+
+    @Override
+    public void setFromTelegram(boolean fromTelegram) {
+        load();
+        super.setFromTelegram(fromTelegram);
+    }
+
+    @Override
+    public String toString() {
+        load();
+        return super.toString();
+    }
+}
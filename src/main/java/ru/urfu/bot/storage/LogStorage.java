@@ -0,0 +1,351 @@
+package ru.urfu.bot.storage;
+
+import ru.urfu.bot.LongSet;
+import ru.urfu.profile.Profile;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Хранилище в виде журнала, в который только дописываются записи, и периодического снимка.
+ * Каждая запись - это длина, данные и CRC32, поэтому оборванный при падении хвост журнала просто отбрасывается.
+ * Когда в журнале набирается много записей, он переименовывается в log.old, а в фоне
+ * снимок и log.old сворачиваются в новый снимок, где остается только последняя версия каждого профиля и живые лайки.
+ * Снимок хранится в формате MappedSnapshot. Восстановление отображает снимок в память, не разбирая строки профилей,
+ * и затем читает log.old (если сворачивание не успело) и журнал.
+ * Запись в файл идет под ReentrantLock, а не под монитором: ввод-вывод внутри synchronized закрепляет
+ * виртуальный поток за платформенным, и при UPDATE_EXECUTION=virtual тот простаивает на время записи.
+ */
+
+public class LogStorage implements IStorage, Closeable {
+    private static final byte profileRecord = 1;
+    private static final byte likeRecord = 2;
+    private static final byte unlikeRecord = 3;
+
+    private static final int defaultCompactEvery = 100_000;
+
+    private final Path logPath;
+    private final Path oldLogPath;
+    private final Path snapshotPath;
+    private final Path tempSnapshotPath;
+    private final int compactEvery;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "storage-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private DataOutputStream log;
+    private int appendsSinceCompaction;
+    private boolean compacting;
+
+    public LogStorage(Path directory) {
+        this(directory, defaultCompactEvery);
+    }
+
+    /**
+     * @param directory папка хранилища
+     * @param compactEvery через сколько записей сворачивать журнал в снимок
+     */
+    public LogStorage(Path directory, int compactEvery) {
+        this.logPath = directory.resolve("log");
+        this.oldLogPath = directory.resolve("log.old");
+        this.snapshotPath = directory.resolve("snapshot");
+        this.tempSnapshotPath = directory.resolve("snapshot.tmp");
+        this.compactEvery = compactEvery;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void saveProfile(Profile profile) {
+        append(profileRecord, out -> ProfileCodec.write(profile, out));
+    }
+
+    @Override
+    public void saveLike(long likerId, long likedId) {
+        append(likeRecord, out -> {
+            out.writeLong(likerId);
+            out.writeLong(likedId);
+        });
+    }
+
+    @Override
+    public void saveUnlike(long likerId, long likedId) {
+        append(unlikeRecord, out -> {
+            out.writeLong(likerId);
+            out.writeLong(likedId);
+        });
+    }
+
+    @Override
+    public void recover(IStorageListener listener) {
+        lock.lock();
+        try {
+            Files.deleteIfExists(tempSnapshotPath);
+            if (Files.exists(snapshotPath)) {
+                var snapshot = MappedSnapshot.open(snapshotPath);
+                for (var i = 0; i < snapshot.profileCount(); i++) {
+                    listener.onProfile(snapshot.profile(i));
+                }
+                for (var i = 0; i < snapshot.likeCount(); i++) {
+                    listener.onLike(snapshot.likerId(i), snapshot.likedId(i));
+                }
+            }
+            readRecords(oldLogPath, payload -> dispatch(payload, listener));
+            var validLength = readRecords(logPath, payload -> dispatch(payload, listener));
+            if (Files.exists(logPath) && Files.size(logPath) > validLength) {
+                try (var file = new RandomAccessFile(logPath.toFile(), "rw")) {
+                    file.setLength(validLength);
+                }
+            }
+            if (Files.exists(oldLogPath)) {
+                compacting = true;
+                compactor.submit(this::compactOldLog);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return число профилей в снимке, профили из журнала не считаются
+     */
+    @Override
+    public int expectedProfileCount() {
+        lock.lock();
+        try {
+            return Files.exists(snapshotPath) ? MappedSnapshot.readProfileCount(snapshotPath) : 0;
+        } catch (IOException e) {
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сворачивает журнал в снимок прямо сейчас и ждет окончания
+     */
+    public void compact() {
+        lock.lock();
+        try {
+            if (!compacting) {
+                rotateLog();
+                compactor.submit(this::compactOldLog);
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            compactor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            compactor.shutdown();
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(byte type, RecordWriter writer) {
+        var bytes = new ByteArrayOutputStream(64);
+        try {
+            var payload = new DataOutputStream(bytes);
+            payload.writeByte(type);
+            writer.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        lock.lock();
+        try {
+            writeFrame(logStream(), bytes.toByteArray());
+            log.flush();
+            if (++appendsSinceCompaction >= compactEvery && !compacting) {
+                rotateLog();
+                compactor.submit(this::compactOldLog);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DataOutputStream logStream() throws IOException {
+        if (log == null) {
+            log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logPath.toFile(), true)));
+        }
+        return log;
+    }
+
+    /**
+     * Переименовывает журнал в log.old, новые записи пойдут в новый журнал
+     */
+    private void rotateLog() {
+        try {
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+            compacting = true;
+            appendsSinceCompaction = 0;
+            if (Files.exists(oldLogPath)) {
+                // прошлое сворачивание не завершилось, сначала доделываем его
+                return;
+            }
+            if (Files.exists(logPath)) {
+                Files.move(logPath, oldLogPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            compacting = false;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Сворачивает снимок и log.old в новый снимок
+     */
+    private void compactOldLog() {
+        try {
+            var profiles = new LinkedHashMap<Long, byte[]>();
+            var likes = new HashMap<Long, LongSet>();
+            RecordConsumer fold = payload -> {
+                var in = new DataInputStream(new ByteArrayInputStream(payload));
+                switch (in.readByte()) {
+                    case profileRecord:
+                        profiles.put(in.readLong(), Arrays.copyOfRange(payload, 1, payload.length));
+                        break;
+                    case likeRecord:
+                        likes.computeIfAbsent(in.readLong(), id -> new LongSet()).add(in.readLong());
+                        break;
+                    case unlikeRecord:
+                        var set = likes.get(in.readLong());
+                        if (set != null) {
+                            set.remove(in.readLong());
+                        }
+                        break;
+                }
+            };
+            if (Files.exists(snapshotPath)) {
+                var snapshot = MappedSnapshot.open(snapshotPath);
+                for (var i = 0; i < snapshot.profileCount(); i++) {
+                    var record = snapshot.record(i);
+                    var bytes = new byte[record.remaining()];
+                    record.get(bytes);
+                    profiles.put(snapshot.profileId(i), bytes);
+                }
+                for (var i = 0; i < snapshot.likeCount(); i++) {
+                    likes.computeIfAbsent(snapshot.likerId(i), id -> new LongSet()).add(snapshot.likedId(i));
+                }
+            }
+            readRecords(oldLogPath, fold);
+            MappedSnapshot.write(tempSnapshotPath, profiles, likes);
+            Files.move(tempSnapshotPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(oldLogPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.lock();
+            try {
+                compacting = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, byte[] payload) throws IOException {
+        var crc = new CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Читает записи из файла до конца или до первой поврежденной записи
+     * @return длина корректной части файла
+     */
+    private static long readRecords(Path path, RecordConsumer consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        var validLength = 0L;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            var crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    var length = in.readInt();
+                    if (length <= 0 || length > 1 << 20) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                consumer.accept(payload);
+                validLength += payload.length + 2 * Integer.BYTES;
+            }
+        }
+        return validLength;
+    }
+
+    private static void dispatch(byte[] payload, IStorageListener listener) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(payload));
+        switch (in.readByte()) {
+            case profileRecord:
+                listener.onProfile(ProfileCodec.read(in));
+                break;
+            case likeRecord:
+                listener.onLike(in.readLong(), in.readLong());
+                break;
+            case unlikeRecord:
+                listener.onUnlike(in.readLong(), in.readLong());
+                break;
+        }
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface RecordConsumer {
+        void accept(byte[] payload) throws IOException;
+    }
+}
@@ -0,0 +1,191 @@
+package ru.urfu.bot.storage;
+
+import ru.urfu.bot.LongSet;
+import ru.urfu.profile.Profile;
+import ru.urfu.profile.SearchPreferences;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Снимок хранилища в двоичном формате, который читается через отображение файла в память.
+ * Формат: заголовок (magic, версия, число профилей, число лайков),
+ * таблица профилей (id, смещение, длина записи), пары лайков (кто, кого) и записи профилей из ProfileCodec.
+ * Таблицы имеют фиксированную ширину, поэтому при открытии снимка ничего не разбирается,
+ * а строки профилей декодируются только при обращении к ним.
+ */
+
+public class MappedSnapshot {
+    private static final int magic = 0x4D42534E;
+    private static final int version = 1;
+    private static final int headerBytes = 4 * Integer.BYTES;
+    private static final int profileEntryBytes = Long.BYTES + 2 * Integer.BYTES;
+    private static final int likeEntryBytes = 2 * Long.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int profileCount;
+    private final int likeCount;
+    private final int likesOffset;
+    private final Map<ByteBuffer, String> cityKeys = new ConcurrentHashMap<>();
+
+    private MappedSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < headerBytes || buffer.getInt(0) != magic || buffer.getInt(4) != version) {
+            throw new IOException("Неизвестный формат снимка");
+        }
+        this.profileCount = buffer.getInt(8);
+        this.likeCount = buffer.getInt(12);
+        this.likesOffset = headerBytes + profileCount * profileEntryBytes;
+    }
+
+    /**
+     * Отображает снимок в память
+     * @param path путь к снимку
+     * @return снимок
+     */
+    public static MappedSnapshot open(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Читает из заголовка снимка число профилей, не отображая весь файл
+     * @param path путь к снимку
+     * @return число профилей
+     */
+    public static int readProfileCount(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var header = ByteBuffer.allocate(headerBytes);
+            channel.read(header, 0);
+            if (header.hasRemaining() || header.getInt(0) != magic || header.getInt(4) != version) {
+                throw new IOException("Неизвестный формат снимка");
+            }
+            return header.getInt(8);
+        }
+    }
+
+    public int profileCount() {
+        return profileCount;
+    }
+
+    public long profileId(int index) {
+        return buffer.getLong(profileEntry(index));
+    }
+
+    /**
+     * @return профиль, строки которого будут прочитаны при первом обращении
+     */
+    public Profile profile(int index) {
+        var entry = profileEntry(index);
+        return ProfileCodec.readLazy(this, buffer, buffer.getInt(entry + Long.BYTES), buffer.getInt(entry + Long.BYTES + Integer.BYTES));
+    }
+
+    /**
+     * @return запись профиля в формате ProfileCodec
+     */
+    public ByteBuffer record(int index) {
+        var entry = profileEntry(index);
+        return buffer.slice(buffer.getInt(entry + Long.BYTES), buffer.getInt(entry + Long.BYTES + Integer.BYTES));
+    }
+
+    /**
+     * Ключ города профиля из снимка. Городов намного меньше, чем профилей, поэтому ключ считается
+     * один раз на каждое написание города, а дальше достается по байтам записи без декодирования
+     * @param strings строки записи профиля
+     * @return ключ города, см. SearchPreferences.cityKey
+     */
+    String cityKey(ByteBuffer strings) {
+        var city = ProfileCodec.cityBytes(strings);
+        if (city == null) {
+            return SearchPreferences.cityKey(null);
+        }
+        return cityKeys.computeIfAbsent(city, bytes -> SearchPreferences.cityKey(ProfileCodec.decodeString(bytes)));
+    }
+
+    public int likeCount() {
+        return likeCount;
+    }
+
+    public long likerId(int index) {
+        return buffer.getLong(likesOffset + index * likeEntryBytes);
+    }
+
+    public long likedId(int index) {
+        return buffer.getLong(likesOffset + index * likeEntryBytes + Long.BYTES);
+    }
+
+    /**
+     * Записывает снимок
+     * @param path куда писать
+     * @param records записи профилей в формате ProfileCodec по id
+     * @param likes лайки: кто лайкнул - кого лайкнул
+     */
+    public static void write(Path path, Map<Long, byte[]> records, Map<Long, LongSet> likes) throws IOException {
+        var likeCount = 0L;
+        for (var set : likes.values()) {
+            likeCount += set.size();
+        }
+        var recordBytes = 0L;
+        for (var record : records.values()) {
+            recordBytes += record.length;
+        }
+        checkSize(records.size(), likeCount, recordBytes);
+
+        try (var stream = new FileOutputStream(path.toFile());
+             var out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeInt(records.size());
+            out.writeInt((int) likeCount);
+
+            var offset = headerBytes + records.size() * profileEntryBytes + (int) likeCount * likeEntryBytes;
+            for (var entry : records.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeInt(offset);
+                out.writeInt(entry.getValue().length);
+                offset += entry.getValue().length;
+            }
+            for (var entry : likes.entrySet()) {
+                for (var likedId : entry.getValue().toArray()) {
+                    out.writeLong(entry.getKey());
+                    out.writeLong(likedId);
+                }
+            }
+            for (var record : records.values()) {
+                out.write(record);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    /**
+     * Смещения в снимке хранятся в int, а файл отображается в память одним буфером, поэтому снимок
+     * не может быть больше 2 ГБ. Сворачивание журнала в такой снимок должно упасть, а не записать обрезанные смещения
+     * @param profileCount число профилей
+     * @param likeCount число лайков
+     * @param recordBytes суммарная длина записей профилей
+     * @return размер снимка в байтах
+     * @throws IOException если снимок не поместится
+     */
+    static int checkSize(int profileCount, long likeCount, long recordBytes) throws IOException {
+        var size = headerBytes + (long) profileCount * profileEntryBytes + likeCount * likeEntryBytes + recordBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Снимок занял бы " + size + " байт, а больше " + Integer.MAX_VALUE + " не поддерживается");
+        }
+        return (int) size;
+    }
+
+    private int profileEntry(int index) {
+        return headerBytes + index * profileEntryBytes;
+    }
+}
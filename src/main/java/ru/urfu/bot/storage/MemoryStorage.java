@@ -0,0 +1,25 @@
+package ru.urfu.bot.storage;
+
+import ru.urfu.profile.Profile;
+
+/**
+ * Хранилище, которое ничего не сохраняет. Все данные живут только в памяти до перезапуска
+ */
+
+public class MemoryStorage implements IStorage {
+    @Override
+    public void saveProfile(Profile profile) {
+    }
+
+    @Override
+    public void saveLike(long likerId, long likedId) {
+    }
+
+    @Override
+    public void saveUnlike(long likerId, long likedId) {
+    }
+
+    @Override
+    public void recover(IStorageListener listener) {
+    }
+}
@@ -0,0 +1,184 @@
+package ru.urfu.bot.storage;
+
+import ru.urfu.bot.keyboards.Keyboards;
+import ru.urfu.bot.locations.Location;
+import ru.urfu.profile.Gender;
+import ru.urfu.profile.Profile;
+import ru.urfu.profile.SearchPreferences;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Переводит профиль в байты и обратно.
+ * Сначала идут поля фиксированной длины (id, пол, возраст, локация), потом строки,
+ * поэтому из снимка можно сразу достать фиксированные поля, а строки читать по требованию.
+ * В конце записи идут предпочтения поиска и мессенджер юзера. В записях, сделанных до их появления, их нет,
+ * такие профили получают предпочтения без ограничений и считаются профилями из Telegram.
+ */
+
+public class ProfileCodec {
+    /**
+     * Записывает поля профиля
+     * @param profile профиль
+     * @param out куда писать
+     */
+    public static void write(Profile profile, DataOutput out) throws IOException {
+        out.writeLong(profile.ID);
+        out.writeByte(profile.getGender() == null ? -1 : profile.getGender().ordinal());
+        out.writeInt(profile.getAge());
+
+        var location = profile.getLocation();
+        out.writeBoolean(location != null);
+        if (location != null) {
+            out.writeDouble(location.getLongitude());
+            out.writeDouble(location.getLatitude());
+        }
+
+        writeString(profile.getTelegramUserName(), out);
+        writeString(profile.getName(), out);
+        writeString(profile.getDescription(), out);
+        writeString(profile.getPhotoLink(), out);
+        writeString(profile.getCity(), out);
+
+        var preferences = profile.getPreferences();
+        out.writeByte(preferences.getGender() == null ? -1 : preferences.getGender().ordinal());
+        out.writeInt(preferences.getMinAge());
+        out.writeInt(preferences.getMaxAge());
+        writeString(preferences.getCity(), out);
+        out.writeBoolean(profile.isFromTelegram());
+    }
+
+    /**
+     * Читает профиль, записанный методом write. Восстановленный профиль сразу попадает в основное меню
+     * @param in откуда читать
+     * @return профиль
+     */
+    public static Profile read(DataInput in) throws IOException {
+        var profile = new Profile(in.readLong());
+        var gender = in.readByte();
+        profile.setGender(gender < 0 ? null : Gender.values()[gender]);
+        profile.setAge(in.readInt());
+        if (in.readBoolean()) {
+            profile.setLocation(Location.restore(in.readDouble(), in.readDouble()));
+        }
+        readStrings(profile, in);
+        readPreferences(profile, in);
+        readPlatform(profile, in);
+        profile.setCurrentKeyboard(Keyboards.main);
+        return profile;
+    }
+
+    /**
+     * Создает профиль, у которого фиксированные поля прочитаны сразу, а строки будут прочитаны при первом обращении.
+     * Поля читаются по абсолютным смещениям, поэтому на профиль создается только один срез буфера - под строки
+     * @param snapshot снимок, в котором лежит запись
+     * @param buffer буфер снимка
+     * @param offset где начинается запись, записанная методом write
+     * @param length длина записи
+     * @return профиль
+     */
+    static Profile readLazy(MappedSnapshot snapshot, ByteBuffer buffer, int offset, int length) {
+        var id = buffer.getLong(offset);
+        var gender = buffer.get(offset + Long.BYTES);
+        var age = buffer.getInt(offset + Long.BYTES + 1);
+        var position = offset + Long.BYTES + 1 + Integer.BYTES;
+        Location location = null;
+        if (buffer.get(position++) != 0) {
+            location = Location.restore(buffer.getDouble(position), buffer.getDouble(position + Double.BYTES));
+            position += 2 * Double.BYTES;
+        }
+
+        var profile = new LazyProfile(id, buffer.slice(position, offset + length - position), snapshot);
+        profile.setGender(gender < 0 ? null : Gender.values()[gender]);
+        profile.setAge(age);
+        profile.setLocation(location);
+        profile.setCurrentKeyboard(Keyboards.main);
+        return profile;
+    }
+
+    /**
+     * Читает строковые поля профиля
+     */
+    static void readStrings(Profile profile, DataInput in) throws IOException {
+        profile.setUserName(readString(in));
+        profile.setName(readString(in));
+        profile.setDescription(readString(in));
+        profile.setPhotoLink(readString(in));
+        profile.setCity(readString(in));
+    }
+
+    /**
+     * Находит байты города в строках записи, пропуская остальные строки по их длине без декодирования
+     * @param strings строки записи, начиная с первой, как их передает readLazy
+     * @return город в формате writeUTF (длина и байты) или null, если города нет
+     */
+    static ByteBuffer cityBytes(ByteBuffer strings) {
+        var position = 0;
+        for (var i = 0; i < 4; i++) {
+            if (strings.get(position++) != 0) {
+                position += Short.BYTES + Short.toUnsignedInt(strings.getShort(position));
+            }
+        }
+        if (strings.get(position++) == 0) {
+            return null;
+        }
+        return strings.slice(position, Short.BYTES + Short.toUnsignedInt(strings.getShort(position)));
+    }
+
+    /**
+     * Декодирует строку из байт, найденных cityBytes
+     */
+    static String decodeString(ByteBuffer utf) {
+        var bytes = new byte[utf.remaining()];
+        utf.duplicate().get(bytes);
+        try {
+            return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Читает предпочтения поиска, если они есть в записи
+     */
+    static void readPreferences(Profile profile, DataInput in) throws IOException {
+        byte gender;
+        try {
+            gender = in.readByte();
+        } catch (EOFException e) {
+            return;
+        }
+        var preferences = new SearchPreferences(gender < 0 ? null : Gender.values()[gender],
+                in.readInt(), in.readInt(), readString(in));
+        profile.setPreferences(preferences.isAny() ? SearchPreferences.any : preferences);
+    }
+
+    /**
+     * Читает мессенджер юзера, если он есть в записи
+     */
+    static void readPlatform(Profile profile, DataInput in) throws IOException {
+        try {
+            profile.setFromTelegram(in.readBoolean());
+        } catch (EOFException e) {
+            // запись сделана до того, как мессенджер стал сохраняться
+        }
+    }
+
+    private static void writeString(String value, DataOutput out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,25 @@
+package ru.urfu.bot.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Создает хранилище по переменным среды
+ */
+
+public class StorageFactory {
+    /**
+     * Если задана переменная STORAGE_DIR, данные пишутся в журнал в папке STORAGE_DIR/name,
+     * иначе хранятся только в памяти.
+     * Журнал переживает перезапуск процесса, но не потерю диска: файловая система dyno на Heroku
+     * стирается при каждом деплое и перезапуске, поэтому там STORAGE_DIR данные не сохраняет
+     * @param name имя хранилища, например платформа бота
+     * @return хранилище
+     */
+    public static IStorage fromEnvironment(String name) {
+        var directory = System.getenv("STORAGE_DIR");
+        if (directory == null || directory.isEmpty()) {
+            return new MemoryStorage();
+        }
+        return new LogStorage(Path.of(directory, name));
+    }
+}
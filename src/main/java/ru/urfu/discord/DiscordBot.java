@@ -6,8 +6,12 @@ import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.requests.GatewayIntent;
-import ru.urfu.bot.ProfileData;
+import ru.urfu.bot.DispatcherFactory;
+import ru.urfu.bot.IUpdateDispatcher;
 import ru.urfu.bot.UpdateHandler;
+import ru.urfu.bot.metrics.Metrics;
+import ru.urfu.bot.metrics.Stage;
+import ru.urfu.bot.storage.StorageFactory;
 
 import javax.security.auth.login.LoginException;
 
@@ -16,18 +20,27 @@ import javax.security.auth.login.LoginException;
  */
 
 public class DiscordBot extends ListenerAdapter {
-    private static UpdateHandler updateHandler;
+    private final UpdateHandler updateHandler;
+    private static final IUpdateDispatcher dispatcher = DispatcherFactory.fromEnvironment();
+
+    /**
+     * Создает бота и восстанавливает профили из хранилища. Пока восстановление не закончилось, бот не подключен
+     * к дискорду, поэтому сообщения не приходят в недособранный обработчик
+     */
+    public DiscordBot() {
+        updateHandler = new UpdateHandler(StorageFactory.fromEnvironment("discord"));
+    }
 
     public static void main(String[] args) throws LoginException {
         // args[0] should be the token
         // We only need 2 intents in this bot. We only respond to messages in guilds and private channels.
         // All other events will be disabled.
         var token = System.getenv("DISCORD_BOT_TOKEN");
+        var bot = new DiscordBot();
         JDABuilder.createLight(token, GatewayIntent.GUILD_MESSAGES, GatewayIntent.DIRECT_MESSAGES)
-                .addEventListeners(new DiscordBot())
+                .addEventListeners(bot)
                 .setActivity(Activity.playing("Type !ping"))
                 .build();
-        updateHandler = new UpdateHandler();
     }
 
     /**
@@ -43,8 +56,14 @@ public class DiscordBot extends ListenerAdapter {
 
         event.getChannel();
         Message msg = event.getMessage();
+        var start = Metrics.start();
         var innerUpdate = DiscordToInnerConverter.Convert(event);
+        Metrics.record(Stage.convert, false, "update", start);
 
-        updateHandler.handleUpdate(innerUpdate);
+        var queued = Metrics.start();
+        dispatcher.dispatch(innerUpdate.getMessage().getFrom().getId(), () -> {
+            Metrics.record(Stage.queue, false, "update", queued);
+            updateHandler.handleUpdate(innerUpdate);
+        });
     }
 }
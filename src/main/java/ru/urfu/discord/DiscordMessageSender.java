@@ -1,44 +1,91 @@
 package ru.urfu.discord;
 
 import net.dv8tion.jda.api.JDA;
+import ru.urfu.bot.outbound.IOutboundTransport;
+import ru.urfu.bot.outbound.OutboundMessage;
+
+import ru.urfu.bot.photos.IPhotoLoader;
+import ru.urfu.bot.photos.PhotoCache;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.util.List;
 
 /**
- * Класс, отправляющий сообщения в дискорд
+ * Класс, отправляющий сообщения в дискорд.
+ * Вызывается из очереди исходящих сообщений, поэтому ждет ответа Discord и пробрасывает ошибки дальше
  */
 
-public class DiscordMessageSender {
+public class DiscordMessageSender implements IOutboundTransport {
     public static JDA api;
 
+    private final PhotoCache photoCache;
+    private final IPhotoLoader idLoader;
+
+    /**
+     * @param photoCache откуда брать байты фото, чтобы не скачивать их при каждом показе
+     * @param idLoader загрузчик фото, которые сохранены не ссылкой, а id, например file_id из Telegram
+     */
+    public DiscordMessageSender(PhotoCache photoCache, IPhotoLoader idLoader) {
+        this.photoCache = photoCache;
+        this.idLoader = idLoader;
+    }
+
+    /**
+     * Отправляет сообщение, фото с подписью или альбом. Клавиатура текстового сообщения выводится списком под текстом
+     * @param message сообщение
+     */
+    @Override
+    public void send(OutboundMessage message) throws IOException {
+        if (message.isAlbum()) {
+            sendAlbum(message.getChatId(), message.getText(), message.getAlbumLinks());
+            return;
+        }
+        if (message.hasPhoto()) {
+            sendPhoto(message.getChatId(), message.getText(), message.getPhotoLink());
+            return;
+        }
+
+        var text = message.getText();
+        if (message.getKeyboard() != null) {
+            text = text + '\n' + message.getKeyboard().getDiscordKeyboard().getKeyboard();
+        }
+        sendMessage(message.getChatId(), text);
+    }
+
     /**
      * Отправляет сообщение с текстом в канал
      * @param chatId chatId куда отправляем
      * @param text что отправляем
      */
     public static void sendMessage(Long chatId, String text) {
-        api.getTextChannelById(chatId).sendMessage(text).queue();
+        api.getTextChannelById(chatId).sendMessage(text).complete();
     }
 
     /**
-     * Отправляем фото по URL
+     * Отправляем фото по URL, передавая байты источника без перекодирования
      * @param chatId chatId куда отправляем
      * @param text текст
      * @param urlStr URL фотографии
      */
-    public static void sendPhoto(Long chatId, String text, String urlStr) {
-        try {
-            URL url = new URL(urlStr);
-            BufferedImage img = ImageIO.read(url);
-            File file = new File("temp.png");
-            ImageIO.write(img, "png", file);
-            api.getTextChannelById(chatId).sendMessage(text).addFile(file).queue();
-        } catch (IOException e) {
-            e.printStackTrace();
+    public void sendPhoto(Long chatId, String text, String urlStr) throws IOException {
+        sendAlbum(chatId, text, List.of(urlStr));
+    }
+
+    /**
+     * Отправляет несколько фото одним сообщением. Фото берутся из кэша, а при промахе скачиваются и кэшируются.
+     * Фото юзеров из Telegram сохранены как file_id, их байты скачиваются через Bot API.
+     * Кэшу нужны все байты фото, чтобы посчитать хэш, поэтому при промахе фото читается в память целиком,
+     * а не передается в Discord потоком прямо из источника
+     * @param chatId chatId куда отправляем
+     * @param text текст
+     * @param urls URL или id фотографий
+     */
+    public void sendAlbum(Long chatId, String text, List<String> urls) throws IOException {
+        var action = api.getTextChannelById(chatId).sendMessage(text);
+        for (var i = 0; i < urls.size(); i++) {
+            var bytes = photoCache.fetch(urls.get(i), source -> PhotoRelay.load(source, idLoader));
+            action = action.addFile(bytes, PhotoRelay.fileName(urls.get(i), i));
         }
+        action.complete();
     }
 }
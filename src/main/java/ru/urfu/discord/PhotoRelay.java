@@ -0,0 +1,85 @@
+package ru.urfu.discord;
+
+import ru.urfu.bot.photos.IPhotoLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Пересылает фото из источника в Discord как есть: исходные байты уходят в запрос
+ * без декодирования картинки, перекодирования в PNG и общего временного файла
+ */
+
+public class PhotoRelay {
+    private static final int timeoutMillis = 10_000;
+    private static final Set<String> knownExtensions = Set.of("jpg", "jpeg", "png", "gif", "webp");
+
+    /**
+     * Открывает поток с байтами фото. Закрыть поток должен вызывающий код после отправки
+     * @param url ссылка на фото
+     * @return поток байтов фото
+     */
+    public static InputStream open(String url) throws IOException {
+        var connection = new URL(url).openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        return connection.getInputStream();
+    }
+
+    /**
+     * Скачивает фото целиком, не декодируя его
+     * @param url ссылка на фото
+     * @return байты фото
+     */
+    public static byte[] download(String url) throws IOException {
+        try (var stream = open(url)) {
+            return stream.readAllBytes();
+        }
+    }
+
+    /**
+     * Скачивает фото из источника. Ссылки скачиваются напрямую, а все остальное считается id фото
+     * на другой платформе (например file_id из Telegram) и отдается загрузчику этой платформы
+     * @param source ссылка или id фото
+     * @param idLoader загрузчик фото по id
+     * @return байты фото
+     */
+    public static byte[] load(String source, IPhotoLoader idLoader) throws IOException {
+        return isUrl(source) ? download(source) : idLoader.load(source);
+    }
+
+    /**
+     * @return похож ли источник на ссылку, а не на id фото
+     */
+    public static boolean isUrl(String source) {
+        return source.contains("://");
+    }
+
+    /**
+     * Имя вложения с расширением исходного файла, чтобы Discord показал фото превью
+     * @param url ссылка на фото
+     * @param index номер фото в сообщении
+     * @return имя файла
+     */
+    public static String fileName(String url, int index) {
+        String path;
+        try {
+            path = new URL(url).getPath();
+        } catch (MalformedURLException e) {
+            path = null;
+        }
+        var extension = "jpg";
+        var dot = path == null ? -1 : path.lastIndexOf('.');
+        if (dot >= 0 && dot > path.lastIndexOf('/')) {
+            var candidate = path.substring(dot + 1).toLowerCase(Locale.ROOT);
+            if (knownExtensions.contains(candidate)) {
+                extension = candidate;
+            }
+        }
+        return "photo" + index + "." + extension;
+    }
+}
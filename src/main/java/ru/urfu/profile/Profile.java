@@ -5,8 +5,6 @@ import ru.urfu.bot.locations.ILocation;
 import ru.urfu.bot.MatchHandler;
 import ru.urfu.bot.ProfileSelector;
 
-import java.util.Objects;
-
 /**
  * Класс профиля.
  */
@@ -22,6 +20,16 @@ public class Profile {
         MatchHandler.addUser(this);
     }
 
+    /**
+     * Номер версии профиля, растет при каждом изменении его данных.
+     * По нему кэши понимают, что посчитанное по профилю устарело
+     */
+    private volatile int version;
+
+    public int getVersion() {
+        return version;
+    }
+
     private ILocation location;
 
     public ILocation getLocation() {
@@ -30,6 +38,7 @@ public class Profile {
 
     public void setLocation(ILocation location) {
         this.location = location;
+        version++;
     }
 
     public long getID() {
@@ -46,6 +55,7 @@ public class Profile {
 
     public void setUserName(String telegramName) {
         this.telegramUserName = telegramName;
+        version++;
     }
 
     private String name;
@@ -56,6 +66,7 @@ public class Profile {
 
     public void setName(String name) {
         this.name = name;
+        version++;
     }
 
     private IKeyboard currentKeyboard;
@@ -68,6 +79,19 @@ public class Profile {
         this.currentKeyboard = currentKeyboard;
     }
 
+    /**
+     * Место в ленте, сохраненное при удалении сессии юзера, или null
+     */
+    private ProfileSelector.Position feedPosition;
+
+    public ProfileSelector.Position getFeedPosition() {
+        return feedPosition;
+    }
+
+    public void setFeedPosition(ProfileSelector.Position feedPosition) {
+        this.feedPosition = feedPosition;
+    }
+
     private Gender gender;
 
     public Gender getGender() {
@@ -76,6 +100,7 @@ public class Profile {
 
     public void setGender(Gender gender) {
         this.gender = gender;
+        version++;
     }
 
     private String description;
@@ -86,6 +111,7 @@ public class Profile {
 
     public void setDescription(String description) {
         this.description = description;
+        version++;
     }
 
 
@@ -97,6 +123,7 @@ public class Profile {
 
     public void setPhotoLink(String photoLink) {
         this.photoLink = photoLink;
+        version++;
     }
 
 
@@ -106,8 +133,16 @@ public class Profile {
         return city;
     }
 
+    /**
+     * @return город в виде, в котором города сравниваются, см. SearchPreferences.cityKey
+     */
+    public String getCityKey() {
+        return SearchPreferences.cityKey(getCity());
+    }
+
     public void setCity(String city) {
         this.city = city;
+        version++;
     }
 
 
@@ -119,6 +154,52 @@ public class Profile {
 
     public void setAge(int age) {
         this.age = age;
+        version++;
+    }
+
+
+    private SearchPreferences preferences = SearchPreferences.any;
+
+    /**
+     * @return кого юзер хочет видеть в ленте
+     */
+    public SearchPreferences getPreferences() {
+        return preferences;
+    }
+
+    public void setPreferences(SearchPreferences preferences) {
+        this.preferences = preferences;
+        version++;
+    }
+
+
+    /**
+     * Из какого мессенджера юзер пишет боту. Id профиля совпадает с id его чата в этом мессенджере,
+     * поэтому по профилю можно написать юзеру, даже если апдейт пришел от другого юзера
+     */
+    private boolean fromTelegram = true;
+
+    public boolean isFromTelegram() {
+        return fromTelegram;
+    }
+
+    public void setFromTelegram(boolean fromTelegram) {
+        this.fromTelegram = fromTelegram;
+        version++;
+    }
+
+
+    /**
+     * Когда юзер последний раз что-то делал в боте, в миллисекундах. 0, если с запуска бота не заходил
+     */
+    private volatile long lastActive;
+
+    public long getLastActive() {
+        return lastActive;
+    }
+
+    public void setLastActive(long lastActive) {
+        this.lastActive = lastActive;
     }
 
 
@@ -144,14 +225,14 @@ public class Profile {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Profile)) return false;
         Profile profile = (Profile) o;
-        return Objects.equals(ID, profile.ID);
+        return ID == profile.ID;
     }
 
 
     @Override
     public int hashCode() {
-        return Objects.hash(ID);
+        return Long.hashCode(ID);
     }
 }
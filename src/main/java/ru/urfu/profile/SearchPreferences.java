@@ -0,0 +1,97 @@
+package ru.urfu.profile;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Кого юзер хочет видеть в ленте: пол, диапазон возраста и город. Пустое поле означает "любой"
+ */
+
+public class SearchPreferences {
+    /**
+     * Предпочтения без ограничений
+     */
+    public static final SearchPreferences any = new SearchPreferences(null, 0, Integer.MAX_VALUE, null);
+
+    private final Gender gender;
+    private final int minAge;
+    private final int maxAge;
+    private final String city;
+
+    /**
+     * @param gender пол или null
+     * @param minAge минимальный возраст, 0 - без ограничения
+     * @param maxAge максимальный возраст, Integer.MAX_VALUE - без ограничения
+     * @param city город или null
+     */
+    public SearchPreferences(Gender gender, int minAge, int maxAge, String city) {
+        this.gender = gender;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.city = city;
+    }
+
+    public Gender getGender() {
+        return gender;
+    }
+
+    public int getMinAge() {
+        return minAge;
+    }
+
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public boolean hasAgeRange() {
+        return minAge > 0 || maxAge < Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return true, если ни одного ограничения нет
+     */
+    public boolean isAny() {
+        return gender == null && !hasAgeRange() && city == null;
+    }
+
+    /**
+     * Проверяет, подходит ли профиль под предпочтения
+     * @param profile профиль
+     * @return true, если подходит
+     */
+    public boolean matches(Profile profile) {
+        if (gender != null && profile.getGender() != gender) {
+            return false;
+        }
+        if (profile.getAge() < minAge || profile.getAge() > maxAge) {
+            return false;
+        }
+        return city == null || cityKey(city).equals(profile.getCityKey());
+    }
+
+    /**
+     * Приводит название города к виду, в котором города сравниваются: без пробелов по краям, в нижнем регистре, е вместо ё
+     * @param city город
+     * @return ключ города или пустая строка для null
+     */
+    public static String cityKey(String city) {
+        return city == null ? "" : city.trim().toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SearchPreferences)) return false;
+        var that = (SearchPreferences) o;
+        return minAge == that.minAge && maxAge == that.maxAge && gender == that.gender && Objects.equals(city, that.city);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(gender, minAge, maxAge, city);
+    }
+}
@@ -3,8 +3,12 @@ package ru.urfu.telegram;
 
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import ru.urfu.bot.ProfileData;
+import ru.urfu.bot.DispatcherFactory;
+import ru.urfu.bot.IUpdateDispatcher;
 import ru.urfu.bot.UpdateHandler;
+import ru.urfu.bot.metrics.Metrics;
+import ru.urfu.bot.metrics.Stage;
+import ru.urfu.bot.storage.StorageFactory;
 
 import java.io.IOException;
 
@@ -17,6 +21,7 @@ public class TelegramBot extends TelegramLongPollingBot {
     private final String token;
     private final String userName;
     private final UpdateHandler updateHandler;
+    private final IUpdateDispatcher dispatcher;
 
     /**
      * Метод создаёт нового бота
@@ -41,21 +46,28 @@ public class TelegramBot extends TelegramLongPollingBot {
     public TelegramBot(String token, String userName) {
         this.token = token;
         this.userName = userName;
-        updateHandler = new UpdateHandler();
+        updateHandler = new UpdateHandler(StorageFactory.fromEnvironment("telegram"));
+        dispatcher = DispatcherFactory.fromEnvironment();
     }
 
     /**
-     * Обрабатывает обновление
+     * Обрабатывает обновление. Сама обработка идет в очереди юзера, чтобы не держать поток long polling
      */
     @Override
     public void onUpdateReceived(Update update) {
+        var start = Metrics.start();
         var innerUpdate = TGToInnerConverter.Convert(update);
+        Metrics.record(Stage.convert, true, "update", start);
 
-        if (innerUpdate.hasLocation()) {
-            updateHandler.handleLocation(innerUpdate);
-        }
+        var queued = Metrics.start();
+        dispatcher.dispatch(innerUpdate.getMessage().getFrom().getId(), () -> {
+            Metrics.record(Stage.queue, true, "update", queued);
+            if (innerUpdate.hasLocation()) {
+                updateHandler.handleLocation(innerUpdate);
+            }
 
-        updateHandler.handleUpdate(innerUpdate);
+            updateHandler.handleUpdate(innerUpdate);
+        });
     }
 
 
@@ -1,103 +1,134 @@
 package ru.urfu.telegram;
 
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-import ru.urfu.bot.IUpdate;
-import ru.urfu.bot.keyboards.Keyboards;
-import ru.urfu.profile.Profile;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.urfu.bot.outbound.IOutboundTransport;
+import ru.urfu.bot.outbound.OutboundMessage;
+import ru.urfu.bot.outbound.RetryAfterException;
+import ru.urfu.bot.photos.PhotoCache;
+
+import java.util.ArrayList;
 
 /**
- * Класс, который отправляет сообщения в телеграмм
+ * Класс, который отправляет сообщения в телеграмм.
+ * Вызывается из очереди исходящих сообщений, поэтому ошибки не глотает, а пробрасывает дальше
  */
-public class TelegramMessageSender {
+public class TelegramMessageSender implements IOutboundTransport {
+    private static final String platform = "telegram";
+
     public static TelegramBot bot;
 
+    private final PhotoCache photoCache;
+
     /**
-     * Метод, возвращающий айди чата
-     *
-     * @param update принимает апдейт от бота
-     * @return возвращает строку с чат айди
+     * @param photoCache где запоминать file_id фото, загруженных в Telegram по ссылке
      */
-    public static String getChatIdFromUpdate(IUpdate update) {
-        return update.getMessage().getChatId().toString();
+    public TelegramMessageSender(PhotoCache photoCache) {
+        this.photoCache = photoCache;
     }
 
     /**
-     * Метод для отправки фотографии с подписью
-     *
-     * @param update      апдейт от бота
-     * @param nextProfile следующий профиль
-     * @param message     само сообщение
+     * Отправляет сообщение, фото с подписью или альбом
+     * @param message сообщение
+     * @throws RetryAfterException если Telegram ограничил частоту запросов
+     * @throws TelegramApiException если отправить не удалось
      */
-    public static void sendPhotoWithCaption(IUpdate update, Profile nextProfile, String message) {
-        var chatId = getChatIdFromUpdate(update);
+    @Override
+    public void send(OutboundMessage message) throws RetryAfterException, TelegramApiException {
+        var chatId = String.valueOf(message.getChatId());
+        var replyMarkup = message.getKeyboard() == null ? null : message.getKeyboard().getTelegramKeyboard();
 
-        if (nextProfile.ID != -1) {
-            var photo = new InputFile(nextProfile.getPhotoLink());
-            sendPhoto(chatId, photo, Keyboards.main.getTelegramKeyboard(), message);
-            return;
+        try {
+            if (message.isAlbum()) {
+                sendAlbum(chatId, message);
+            } else if (message.hasPhoto()) {
+                var sent = bot.execute(SendPhoto.builder()
+                        .chatId(chatId)
+                        .photo(new InputFile(photoId(message.getPhotoLink())))
+                        .replyMarkup(replyMarkup)
+                        .caption(message.getText())
+                        .build());
+                remember(message.getPhotoLink(), sent);
+            } else {
+                bot.execute(SendMessage.builder()
+                        .chatId(chatId)
+                        .text(message.getText())
+                        .replyMarkup(replyMarkup)
+                        .build());
+            }
+        } catch (TelegramApiRequestException e) {
+            var parameters = e.getParameters();
+            if (parameters != null && parameters.getRetryAfter() != null) {
+                throw new RetryAfterException(parameters.getRetryAfter() * 1000L, e);
+            }
+            throw e;
         }
-
-        sendMessageWithKeyboard(chatId, "Ты долистал анкеты до конца! Начинаем по второму кругу.", Keyboards.main.getTelegramKeyboard());
-
     }
 
     /**
-     * Отправляет сообщение
-     * @param chatId id чата
-     * @param text текст
+     * Отправляет альбом одним запросом. Telegram принимает в альбоме от 2 фото, поэтому одно фото уходит обычным сообщением
      */
-    public static void sendMessage(String chatId, String text) {
-        try {
-            bot.execute(SendMessage.builder()
+    private void sendAlbum(String chatId, OutboundMessage message) throws TelegramApiException {
+        var links = message.getAlbumLinks();
+        var captions = message.getAlbumCaptions();
+        if (links.size() == 1) {
+            var sent = bot.execute(SendPhoto.builder()
                     .chatId(chatId)
-                    .text(text)
+                    .photo(new InputFile(photoId(links.get(0))))
+                    .caption(captions.get(0))
+                    .build());
+            remember(links.get(0), sent);
+            return;
+        }
+
+        var medias = new ArrayList<InputMedia>(links.size());
+        for (var i = 0; i < links.size(); i++) {
+            medias.add(InputMediaPhoto.builder()
+                    .media(photoId(links.get(i)))
+                    .caption(captions.get(i))
                     .build());
         }
-        catch (TelegramApiException e) {
-            e.printStackTrace();
+        var sent = bot.execute(SendMediaGroup.builder()
+                .chatId(chatId)
+                .medias(medias)
+                .build());
+        for (var i = 0; i < sent.size() && i < links.size(); i++) {
+            remember(links.get(i), sent.get(i));
         }
     }
 
     /**
-     * Отправляет сообщение с клавиатурой
-     * @param chatId id чата
-     * @param text текст
-     * @param replyMarkup клавиатура
+     * Фото по ссылке заменяется на file_id, если Telegram уже загружал его раньше
+     * @param photoLink file_id или ссылка на фото
+     * @return что передать в Telegram
      */
-    public static void sendMessageWithKeyboard(String chatId, String text, ReplyKeyboardMarkup replyMarkup) {
-        try {
-            bot.execute(SendMessage.builder()
-                    .chatId(chatId)
-                    .text(text)
-                    .replyMarkup(replyMarkup)
-                    .build());
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
+    private String photoId(String photoLink) {
+        if (!isUrl(photoLink)) {
+            return photoLink;
         }
+        var uploadId = photoCache.getUploadId(platform, photoLink);
+        return uploadId == null ? photoLink : uploadId;
     }
 
     /**
-     * Отправляет фото с подписью
-     * @param chatId id чата
-     * @param photo фото
-     * @param replyMarkup клавиатура
-     * @param caption подпись
+     * Запоминает file_id фото, которое Telegram скачал по ссылке
      */
-    public static void sendPhoto(String chatId, InputFile photo, ReplyKeyboardMarkup replyMarkup, String caption) {
-        try {
-            bot.execute(SendPhoto.builder()
-                    .chatId(chatId)
-                    .photo(photo)
-                    .replyMarkup(replyMarkup)
-                    .caption(caption)
-                    .build()
-            );
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
+    private void remember(String photoLink, Message sent) {
+        if (!isUrl(photoLink) || sent == null || sent.getPhoto() == null || sent.getPhoto().isEmpty()) {
+            return;
         }
+        var sizes = sent.getPhoto();
+        photoCache.putUploadId(platform, photoLink, sizes.get(sizes.size() - 1).getFileId());
+    }
+
+    private static boolean isUrl(String photoLink) {
+        return photoLink.startsWith("http://") || photoLink.startsWith("https://");
     }
 }
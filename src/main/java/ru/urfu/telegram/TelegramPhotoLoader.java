@@ -0,0 +1,35 @@
+package ru.urfu.telegram;
+
+import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import ru.urfu.bot.photos.IPhotoLoader;
+
+import java.io.IOException;
+
+/**
+ * Скачивает фото, сохраненное в профиле как file_id Telegram: через Bot API узнает путь к файлу (GetFile)
+ * и скачивает его байты. Нужно, чтобы фото юзера из Telegram можно было показать в Discord
+ */
+
+public class TelegramPhotoLoader implements IPhotoLoader {
+    /**
+     * @param fileId file_id фото в Telegram
+     * @return байты фото
+     * @throws IOException если бот Telegram не запущен или скачать фото не удалось
+     */
+    @Override
+    public byte[] load(String fileId) throws IOException {
+        var bot = TelegramMessageSender.bot;
+        if (bot == null) {
+            throw new IOException("Бот Telegram не запущен, фото " + fileId + " скачать нельзя");
+        }
+        try {
+            var file = bot.execute(GetFile.builder().fileId(fileId).build());
+            try (var stream = bot.downloadFileAsStream(file)) {
+                return stream.readAllBytes();
+            }
+        } catch (TelegramApiException e) {
+            throw new IOException("Не удалось скачать фото " + fileId + " из Telegram", e);
+        }
+    }
+}
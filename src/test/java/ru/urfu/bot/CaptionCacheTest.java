@@ -0,0 +1,47 @@
+package ru.urfu.bot;
+
+import org.junit.Test;
+import ru.urfu.profile.Profile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CaptionCacheTest {
+
+    /**
+     * Подпись должна браться из кэша, пока профиль не изменился, и пересчитываться после изменения
+     */
+    @Test
+    public void getCaption_should_renderOncePerVersion() {
+        var cache = new CaptionCache();
+        var profile = createProfile();
+
+        var first = cache.getCaption(profile);
+        assertThat(first).isEqualTo("Аня\nЕкатеринбург\n20\n@anya");
+        assertThat(cache.getCaption(profile)).isSameAs(first);
+
+        profile.setCity("Пермь");
+        assertThat(cache.getCaption(profile)).isEqualTo("Аня\nПермь\n20\n@anya");
+    }
+
+    /**
+     * Расстояние и отметка о лайке должны дописываться перед подписью
+     */
+    @Test
+    public void getCaption_should_prependDynamicParts() {
+        var cache = new CaptionCache();
+        var profile = createProfile();
+
+        assertThat(cache.getCaption(profile, -1, false)).isEqualTo("Аня\nЕкатеринбург\n20\n@anya");
+        assertThat(cache.getCaption(profile, 3, true)).isEqualTo(
+                "Ты понравился одному человеку!\nМенее чем в 3 км от тебя!\nАня\nЕкатеринбург\n20\n@anya");
+    }
+
+    private static Profile createProfile() {
+        var profile = new Profile(1);
+        profile.setName("Аня");
+        profile.setCity("Екатеринбург");
+        profile.setAge(20);
+        profile.setUserName("anya");
+        return profile;
+    }
+}
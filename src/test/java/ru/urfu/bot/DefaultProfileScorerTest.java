@@ -0,0 +1,60 @@
+package ru.urfu.bot;
+
+import org.junit.Before;
+import org.junit.Test;
+import ru.urfu.bot.locations.Location;
+import ru.urfu.profile.Profile;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class DefaultProfileScorerTest {
+    private final long now = TimeUnit.DAYS.toMillis(100);
+    private final DefaultProfileScorer scorer = new DefaultProfileScorer(() -> now);
+
+    @Before
+    public void setUp() {
+        MatchHandler.clear();
+    }
+
+    /**
+     * Лайк от кандидата должен весить больше близости и активности вместе
+     */
+    @Test
+    public void score_should_preferWhoLikedOwner() {
+        var owner = new Profile(1);
+        owner.setLocation(new Location(60.6, 56.8));
+        var admirer = new Profile(2);
+        var neighbour = new Profile(3);
+        neighbour.setLocation(new Location(60.6, 56.8));
+        neighbour.setLastActive(now);
+        MatchHandler.likeProfile(admirer, owner);
+
+        assertThat(scorer.score(owner, admirer)).isGreaterThan(scorer.score(owner, neighbour));
+    }
+
+    /**
+     * Близость и активность должны убывать с расстоянием и временем простоя
+     */
+    @Test
+    public void score_should_decayWithDistanceAndIdleTime() {
+        var owner = new Profile(1);
+        owner.setLocation(new Location(0, 0));
+        var near = new Profile(2);
+        near.setLocation(new Location(0, 0));
+        var far = new Profile(3);
+        far.setLocation(new Location(1, 0));
+        var active = new Profile(4);
+        active.setLastActive(now);
+        var idle = new Profile(5);
+        idle.setLastActive(now - TimeUnit.DAYS.toMillis(1));
+
+        assertThat(scorer.score(owner, near)).isCloseTo(1, within(1e-9));
+        assertThat(scorer.score(owner, far)).isBetween(0d, 0.5);
+        assertThat(scorer.score(owner, active)).isCloseTo(1, within(1e-9));
+        assertThat(scorer.score(owner, idle)).isCloseTo(0.5, within(1e-9));
+        assertThat(scorer.score(owner, new Profile(6))).isZero();
+    }
+}
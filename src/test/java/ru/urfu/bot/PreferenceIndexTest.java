@@ -0,0 +1,81 @@
+package ru.urfu.bot;
+
+import org.junit.Test;
+import ru.urfu.profile.Gender;
+import ru.urfu.profile.Profile;
+import ru.urfu.profile.SearchPreferences;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PreferenceIndexTest {
+
+    /**
+     * Поиск должен перескакивать через неподходящие профили, в том числе через целые слова по 64 профиля
+     */
+    @Test
+    public void nextMatch_should_skipToMatchingIndex() {
+        var index = new PreferenceIndex();
+        for (var i = 0; i < 1000; i++) {
+            index.update(i, profile(i, i == 700 || i == 900 ? Gender.female : Gender.male, 25, "Пермь"));
+        }
+        var preferences = new SearchPreferences(Gender.female, 0, Integer.MAX_VALUE, null);
+
+        assertThat(index.nextMatch(preferences, 0, 1000)).isEqualTo(700);
+        assertThat(index.nextMatch(preferences, 701, 1000)).isEqualTo(900);
+        assertThat(index.nextMatch(preferences, 901, 1000)).isEqualTo(-1);
+        assertThat(index.nextMatch(preferences, 0, 800)).isEqualTo(700);
+        assertThat(index.nextMatch(preferences, 701, 800)).isEqualTo(-1);
+    }
+
+    /**
+     * Измененный профиль должен пропадать из старых битсетов
+     */
+    @Test
+    public void update_should_moveProfileBetweenPostings() {
+        var index = new PreferenceIndex();
+        index.update(0, profile(0, Gender.female, 25, "Пермь"));
+        index.update(0, profile(0, Gender.female, 40, "Екатеринбург"));
+
+        assertThat(index.nextMatch(new SearchPreferences(null, 0, Integer.MAX_VALUE, "Пермь"), 0, 1)).isEqualTo(-1);
+        assertThat(index.nextMatch(new SearchPreferences(null, 20, 30, null), 0, 1)).isEqualTo(-1);
+        assertThat(index.nextMatch(new SearchPreferences(Gender.female, 35, 45, "екатеринбург"), 0, 1)).isEqualTo(0);
+    }
+
+    /**
+     * Битсет города, в котором не осталось профилей, должен удаляться
+     */
+    @Test
+    public void update_should_dropEmptyCity() {
+        var index = new PreferenceIndex();
+        index.update(0, profile(0, Gender.female, 25, "Пермь"));
+        index.update(1, profile(1, Gender.male, 25, "Пермь"));
+        index.update(0, profile(0, Gender.female, 25, "Прмь"));
+        index.update(0, profile(0, Gender.female, 25, "Екатеринбург"));
+
+        assertThat(index.getCityCount()).isEqualTo(2);
+        assertThat(index.nextMatch(new SearchPreferences(null, 0, Integer.MAX_VALUE, "Прмь"), 0, 2)).isEqualTo(-1);
+        assertThat(index.nextMatch(new SearchPreferences(null, 0, Integer.MAX_VALUE, "Пермь"), 0, 2)).isEqualTo(1);
+    }
+
+    /**
+     * Битсет должен дорастать до дальних индексов, не теряя ближние
+     */
+    @Test
+    public void nextMatch_should_findFarIndex() {
+        var index = new PreferenceIndex();
+        index.update(3, profile(3, Gender.female, 25, "Пермь"));
+        index.update(1_000_000, profile(1_000_000, Gender.female, 25, "Пермь"));
+        var preferences = new SearchPreferences(Gender.female, 0, Integer.MAX_VALUE, "Пермь");
+
+        assertThat(index.nextMatch(preferences, 0, 1_000_001)).isEqualTo(3);
+        assertThat(index.nextMatch(preferences, 4, 1_000_001)).isEqualTo(1_000_000);
+    }
+
+    private static Profile profile(long id, Gender gender, int age, String city) {
+        var profile = new Profile(id);
+        profile.setGender(gender);
+        profile.setAge(age);
+        profile.setCity(city);
+        return profile;
+    }
+}
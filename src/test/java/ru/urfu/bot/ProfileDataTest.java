@@ -4,6 +4,10 @@ import junit.framework.TestCase;
 import org.junit.Assert;
 import ru.urfu.profile.Profile;
 
+import java.util.HashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 public class ProfileDataTest extends TestCase {
 
     public void testAddProfile() {
@@ -13,4 +17,47 @@ public class ProfileDataTest extends TestCase {
         Assert.assertTrue(ProfileData.containsId(0));
     }
 
-}
\ No newline at end of file
+    /**
+     * Повторное добавление профиля заменяет его на том же индексе и не меняет размер
+     */
+    public void testAddProfileTwice() {
+        var ProfileData = new ProfileData();
+        ProfileData.addProfile(new Profile(7));
+        var updated = new Profile(7);
+        updated.setName("Аня");
+        ProfileData.addProfile(updated);
+
+        Assert.assertEquals(1, ProfileData.size());
+        Assert.assertSame(updated, ProfileData.getByIndex(0));
+        Assert.assertEquals(0, ProfileData.getIndex(updated));
+    }
+
+    /**
+     * Параллельная регистрация не должна терять профили, а индексы должны быть плотными и уникальными
+     */
+    public void testConcurrentAddProfile() throws Exception {
+        var ProfileData = new ProfileData();
+        var threads = 8;
+        var perThread = 5000;
+        var pool = Executors.newFixedThreadPool(threads);
+        for (var t = 0; t < threads; t++) {
+            var from = t * perThread;
+            pool.execute(() -> {
+                for (var id = from; id < from + perThread; id++) {
+                    ProfileData.addProfile(new Profile(id));
+                }
+            });
+        }
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        Assert.assertEquals(threads * perThread, ProfileData.size());
+        var ids = new HashSet<Long>();
+        for (var index = 0; index < ProfileData.size(); index++) {
+            var profile = ProfileData.getByIndex(index);
+            Assert.assertEquals(index, ProfileData.getIndex(profile));
+            ids.add(profile.ID);
+        }
+        Assert.assertEquals(threads * perThread, ids.size());
+    }
+}
@@ -3,7 +3,11 @@ package ru.urfu.bot;
 import junit.framework.TestCase;
 import org.junit.Assert;
 import ru.urfu.bot.locations.Location;
+import ru.urfu.profile.Gender;
 import ru.urfu.profile.Profile;
+import ru.urfu.profile.SearchPreferences;
+
+import java.util.HashSet;
 
 public class ProfileSelectorTest extends TestCase {
 
@@ -24,4 +28,199 @@ public class ProfileSelectorTest extends TestCase {
         Assert.assertSame(next.getProfile(), p1);
         Assert.assertSame(selector.getCurrent(), p1);
     }
-}
\ No newline at end of file
+
+    public void testGetNextProfileWrapperWalksWholeDeckThenStartsOver() {
+        var ProfileData = new ProfileData();
+        var owner = new Profile(0);
+        ProfileData.addProfile(owner);
+        var others = new HashSet<Profile>();
+        for (var i = 1; i <= 5; i++) {
+            var p = new Profile(i);
+            ProfileData.addProfile(p);
+            others.add(p);
+        }
+        var selector = new ProfileSelector(owner, ProfileData);
+
+        var firstPass = new HashSet<Profile>();
+        for (var i = 0; i < others.size(); i++) {
+            firstPass.add(selector.getNextProfileWrapper().getProfile());
+        }
+        Assert.assertEquals(others, firstPass);
+
+        var secondPassStart = selector.getNextProfileWrapper().getProfile();
+        Assert.assertTrue(others.contains(secondPassStart));
+    }
+
+    public void testGetNextProfileWrapperReturnsEmptyProfileWhenAlone() {
+        var ProfileData = new ProfileData();
+        var owner = new Profile(0);
+        ProfileData.addProfile(owner);
+        var selector = new ProfileSelector(owner, ProfileData);
+
+        Assert.assertEquals(-1, selector.getNextProfileWrapper().getProfile().getID());
+        Assert.assertEquals(-1, selector.getNextProfileWrapper().getProfile().getID());
+    }
+
+    public void testGetNextProfileWrapperFollowsPreferences() {
+        var ProfileData = new ProfileData();
+        var owner = new Profile(0);
+        ProfileData.addProfile(owner);
+        var expected = new HashSet<Profile>();
+        for (var i = 1; i <= 300; i++) {
+            var p = new Profile(i);
+            p.setGender(i % 3 == 0 ? Gender.female : Gender.male);
+            p.setAge(15 + i % 20);
+            p.setCity(i % 2 == 0 ? "Екатеринбург" : "Пермь");
+            ProfileData.addProfile(p);
+            if (p.getGender() == Gender.female && p.getAge() >= 21 && p.getAge() <= 27 && i % 2 == 0) {
+                expected.add(p);
+            }
+        }
+        owner.setPreferences(new SearchPreferences(Gender.female, 21, 27, " екатеринбург"));
+        var selector = new ProfileSelector(owner, ProfileData);
+
+        var shown = new HashSet<Profile>();
+        for (var i = 0; i < expected.size(); i++) {
+            shown.add(selector.getNextProfileWrapper().getProfile());
+        }
+        Assert.assertEquals(expected, shown);
+        Assert.assertTrue(expected.contains(selector.getNextProfileWrapper().getProfile()));
+    }
+
+    public void testRestartShowsProfilesSkippedByOldPreferences() {
+        var ProfileData = new ProfileData();
+        var owner = new Profile(0);
+        ProfileData.addProfile(owner);
+        var male = new Profile(1);
+        male.setGender(Gender.male);
+        ProfileData.addProfile(male);
+        var female = new Profile(2);
+        female.setGender(Gender.female);
+        ProfileData.addProfile(female);
+        owner.setPreferences(new SearchPreferences(Gender.female, 0, Integer.MAX_VALUE, null));
+        var selector = new ProfileSelector(owner, ProfileData);
+
+        Assert.assertSame(female, selector.getNextProfileWrapper().getProfile());
+        owner.setPreferences(SearchPreferences.any);
+        selector.restart();
+        Assert.assertSame(male, selector.getNextProfileWrapper().getProfile());
+    }
+
+    public void testGetNextProfileWrapperShowsBestScoredFirst() {
+        var ProfileData = new ProfileData();
+        var owner = new Profile(0);
+        ProfileData.addProfile(owner);
+        for (var i = 1; i <= 20; i++) {
+            var p = new Profile(i);
+            p.setAge(18 + i);
+            ProfileData.addProfile(p);
+        }
+        var selector = new ProfileSelector(owner, ProfileData, (o, candidate) -> candidate.getAge());
+
+        var previousAge = Integer.MAX_VALUE;
+        for (var i = 0; i < 20; i++) {
+            var age = selector.getNextProfileWrapper().getProfile().getAge();
+            Assert.assertTrue(age < previousAge);
+            previousAge = age;
+        }
+    }
+
+    public void testGetNextProfileWrapperShowsWhoLikedOwnerFirst() {
+        MatchHandler.clear();
+        var ProfileData = new ProfileData();
+        var owner = new Profile(0);
+        ProfileData.addProfile(owner);
+        Profile admirer = null;
+        for (var i = 1; i <= 10; i++) {
+            admirer = new Profile(i);
+            ProfileData.addProfile(admirer);
+        }
+        MatchHandler.likeProfile(admirer, owner);
+        var selector = new ProfileSelector(owner, ProfileData);
+
+        Assert.assertSame(admirer, selector.getNextProfileWrapper().getProfile());
+    }
+
+    public void testGetNextProfileWrapperShowsPendingLikeBeforeNearby() {
+        MatchHandler.clear();
+        var ProfileData = new ProfileData();
+        var owner = new Profile(0);
+        owner.setLocation(new Location(0, 0));
+        ProfileData.addProfile(owner);
+        var neighbour = new Profile(1);
+        neighbour.setLocation(new Location(0, 0));
+        ProfileData.addProfile(neighbour);
+        ProfileData.getLocationData().addProfile(neighbour);
+        var admirer = new Profile(2);
+        ProfileData.addProfile(admirer);
+        var selector = new ProfileSelector(owner, ProfileData);
+
+        Assert.assertSame(neighbour, selector.getNextProfileWrapper().getProfile());
+        Assert.assertSame(admirer, selector.getNextProfileWrapper().getProfile());
+        MatchHandler.likeProfile(admirer, owner);
+        Assert.assertSame(admirer, selector.getNextProfileWrapper().getProfile());
+        Assert.assertSame(neighbour, selector.getNextProfileWrapper().getProfile());
+    }
+
+    public void testGetNextProfileWrapperSkipsPendingLikeOutsidePreferences() {
+        MatchHandler.clear();
+        var ProfileData = new ProfileData();
+        var owner = new Profile(0);
+        ProfileData.addProfile(owner);
+        var female = new Profile(1);
+        female.setGender(Gender.female);
+        ProfileData.addProfile(female);
+        var male = new Profile(2);
+        male.setGender(Gender.male);
+        ProfileData.addProfile(male);
+        owner.setPreferences(new SearchPreferences(Gender.female, 0, Integer.MAX_VALUE, null));
+        MatchHandler.likeProfile(male, owner);
+        var selector = new ProfileSelector(owner, ProfileData);
+
+        Assert.assertSame(female, selector.getNextProfileWrapper().getProfile());
+        Assert.assertSame(female, selector.getNextProfileWrapper().getProfile());
+    }
+
+    public void testRankedCandidatesAreRecheckedWhenOwnerChangesPreferences() {
+        MatchHandler.clear();
+        var ProfileData = new ProfileData();
+        var owner = new Profile(0);
+        ProfileData.addProfile(owner);
+        for (var i = 1; i <= 10; i++) {
+            var p = new Profile(i);
+            p.setGender(i % 2 == 0 ? Gender.female : Gender.male);
+            ProfileData.addProfile(p);
+        }
+        var selector = new ProfileSelector(owner, ProfileData);
+        selector.getNextProfileWrapper();
+
+        owner.setPreferences(new SearchPreferences(Gender.female, 0, Integer.MAX_VALUE, null));
+        for (var i = 0; i < 10; i++) {
+            Assert.assertEquals(Gender.female, selector.getNextProfileWrapper().getProfile().getGender());
+        }
+    }
+
+    public void testGetNextProfileWrapperWaitsForSlotBeingAdded() {
+        MatchHandler.clear();
+        var hidden = new int[]{2};
+        var ProfileData = new ProfileData() {
+            @Override
+            public Profile getByIndex(int index) {
+                return index == hidden[0] ? null : super.getByIndex(index);
+            }
+        };
+        var owner = new Profile(0);
+        ProfileData.addProfile(owner);
+        for (var i = 1; i <= 3; i++) {
+            ProfileData.addProfile(new Profile(i));
+        }
+        var selector = new ProfileSelector(owner, ProfileData, (o, candidate) -> -candidate.getID());
+
+        Assert.assertEquals(1, selector.getNextProfileWrapper().getProfile().getID());
+        Assert.assertEquals(-1, selector.getNextProfileWrapper().getProfile().getID());
+        hidden[0] = -1;
+        Assert.assertEquals(2, selector.getNextProfileWrapper().getProfile().getID());
+        Assert.assertEquals(3, selector.getNextProfileWrapper().getProfile().getID());
+        Assert.assertEquals(1, selector.getNextProfileWrapper().getProfile().getID());
+    }
+}
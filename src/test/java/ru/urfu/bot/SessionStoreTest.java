@@ -0,0 +1,102 @@
+package ru.urfu.bot;
+
+import org.junit.Test;
+import ru.urfu.bot.keyboards.Keyboards;
+import ru.urfu.profile.Profile;
+
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SessionStoreTest {
+
+    /**
+     * У каждого юзера должно быть свое меню, а повторное обращение должно возвращать ту же сессию
+     */
+    @Test
+    public void getSession_should_keepStatePerUser() {
+        try (var store = new SessionStore(new ProfileData())) {
+            var first = createProfile(1);
+            var second = createProfile(2);
+
+            store.getSession(first).setInAdditionalMenu(true);
+
+            assertThat(store.getSession(first).isInAdditionalMenu()).isTrue();
+            assertThat(store.getSession(second).isInAdditionalMenu()).isFalse();
+            assertThat(store.getSession(first)).isSameAs(store.getSession(first));
+            assertThat(store.getSession(first).getKeyboard()).isEqualTo(Keyboards.main);
+        }
+    }
+
+    /**
+     * Закрытое хранилище не должно оставаться в фоновой проверке на простой
+     */
+    @Test
+    public void close_should_cancelSweep() {
+        var store = new SessionStore(new ProfileData());
+        assertThat(store.isSweeping()).isTrue();
+
+        store.close();
+
+        assertThat(store.isSweeping()).isFalse();
+    }
+
+    /**
+     * Простаивающая сессия должна удаляться, сохраняя клавиатуру в профиль, из которой новая сессия восстановит меню
+     */
+    @Test
+    public void evictIdle_should_removeIdleSessions() {
+        var time = new AtomicLong();
+        var store = new SessionStore(new ProfileData(), 1000, time::get);
+        var idle = createProfile(1);
+        var active = createProfile(2);
+
+        store.getSession(idle).setKeyboard(Keyboards.additionalMenu);
+        time.set(600);
+        store.getSession(active);
+        time.set(1200);
+        store.evictIdle(time.get());
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(idle.getCurrentKeyboard()).isEqualTo(Keyboards.additionalMenu);
+        assertThat(store.getSession(idle).getKeyboard()).isEqualTo(Keyboards.additionalMenu);
+        assertThat(store.getSession(idle).isInAdditionalMenu()).isTrue();
+    }
+
+    /**
+     * После удаления сессии новая сессия должна продолжить ленту, а не показывать анкеты заново
+     */
+    @Test
+    public void evictIdle_should_keepFeedPosition() {
+        MatchHandler.clear();
+        var time = new AtomicLong();
+        var profileData = new ProfileData();
+        var owner = createProfile(0);
+        profileData.addProfile(owner);
+        for (var i = 1; i <= 100; i++) {
+            profileData.addProfile(createProfile(i));
+        }
+        var store = new SessionStore(profileData, 1000, time::get);
+
+        var shown = new HashSet<Profile>();
+        for (var i = 0; i < 50; i++) {
+            shown.add(store.getSession(owner).getSelector().getNextProfileWrapper().getProfile());
+        }
+        time.set(2000);
+        store.evictIdle(time.get());
+        assertThat(store.size()).isZero();
+
+        for (var i = 0; i < 50; i++) {
+            shown.add(store.getSession(owner).getSelector().getNextProfileWrapper().getProfile());
+        }
+        assertThat(shown).hasSize(100).doesNotContain(owner);
+        assertThat(owner.getFeedPosition()).isNull();
+    }
+
+    private static Profile createProfile(long id) {
+        var profile = new Profile(id);
+        profile.setCurrentKeyboard(Keyboards.main);
+        return profile;
+    }
+}
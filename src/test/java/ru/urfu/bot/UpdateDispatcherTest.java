@@ -0,0 +1,91 @@
+package ru.urfu.bot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateDispatcherTest {
+
+    /**
+     * Апдейты одного юзера должны обрабатываться в том порядке, в котором пришли
+     */
+    @Test
+    public void dispatch_should_keepOrderPerUser() throws Exception {
+        var dispatcher = new UpdateDispatcher(4, 100);
+        var users = 50;
+        var updatesPerUser = 100;
+        var handled = new ConcurrentHashMap<Long, List<Integer>>();
+        var done = new CountDownLatch(users * updatesPerUser);
+
+        for (var i = 0; i < updatesPerUser; i++) {
+            for (long user = 0; user < users; user++) {
+                var userId = user;
+                var number = i;
+                dispatcher.dispatch(userId, () -> {
+                    handled.computeIfAbsent(userId, id -> new ArrayList<>()).add(number);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        for (long user = 0; user < users; user++) {
+            assertThat(handled.get(user)).isSorted().hasSize(updatesPerUser);
+        }
+        assertThat(dispatcher.getDispatchedCount()).isEqualTo(users * updatesPerUser);
+        assertThat(dispatcher.getRejectedCount()).isZero();
+    }
+
+    /**
+     * Медленный юзер не должен задерживать юзера из другой очереди, а его очередь должна быть видна в метриках
+     */
+    @Test
+    public void dispatch_should_notBlockOtherPartitions() throws Exception {
+        var dispatcher = new UpdateDispatcher(2, 10);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var otherDone = new CountDownLatch(1);
+        var slowUser = 0L;
+        var otherUser = 1L;
+
+        dispatcher.dispatch(slowUser, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatcher.dispatch(slowUser, () -> { });
+        dispatcher.dispatch(otherUser, otherDone::countDown);
+
+        assertThat(otherDone.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(1);
+        assertThat(dispatcher.getMaxQueueDepth()).isEqualTo(1);
+        release.countDown();
+    }
+
+    /**
+     * Упавшая обработка не должна останавливать поток очереди
+     */
+    @Test
+    public void dispatch_should_survive_failingTask() throws Exception {
+        var dispatcher = new UpdateDispatcher(1, 10);
+        var done = new CountDownLatch(1);
+
+        dispatcher.dispatch(0, () -> {
+            throw new IllegalStateException("test");
+        });
+        dispatcher.dispatch(0, done::countDown);
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(dispatcher.getFailedCount()).isEqualTo(1);
+    }
+}
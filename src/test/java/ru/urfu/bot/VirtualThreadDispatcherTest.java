@@ -0,0 +1,90 @@
+package ru.urfu.bot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VirtualThreadDispatcherTest {
+
+    /**
+     * Апдейты одного юзера должны обрабатываться по порядку, даже если поток создается на каждого юзера
+     */
+    @Test
+    public void dispatch_should_keepOrderPerUser() throws Exception {
+        var dispatcher = new VirtualThreadDispatcher(Executors.newCachedThreadPool(), 100);
+        var users = 50;
+        var updatesPerUser = 100;
+        var handled = new ConcurrentHashMap<Long, List<Integer>>();
+        var done = new CountDownLatch(users * updatesPerUser);
+
+        for (var i = 0; i < updatesPerUser; i++) {
+            for (long user = 0; user < users; user++) {
+                var userId = user;
+                var number = i;
+                dispatcher.dispatch(userId, () -> {
+                    handled.computeIfAbsent(userId, id -> new ArrayList<>()).add(number);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        for (long user = 0; user < users; user++) {
+            assertThat(handled.get(user)).isSorted().hasSize(updatesPerUser);
+        }
+    }
+
+    /**
+     * Заблокированный юзер не должен задерживать остальных, а после обработки очереди юзеров не должно остаться
+     */
+    @Test
+    public void dispatch_should_releaseUserQueues() throws Exception {
+        var dispatcher = new VirtualThreadDispatcher(Executors.newCachedThreadPool(), 100);
+        var release = new CountDownLatch(1);
+        var slowDone = new CountDownLatch(1);
+        var otherDone = new CountDownLatch(1);
+
+        dispatcher.dispatch(0, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatcher.dispatch(0, slowDone::countDown);
+        dispatcher.dispatch(1, () -> {
+            throw new IllegalStateException("test");
+        });
+        dispatcher.dispatch(1, otherDone::countDown);
+
+        assertThat(otherDone.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(dispatcher.getInFlight()).isEqualTo(1);
+        release.countDown();
+        assertThat(slowDone.await(10, TimeUnit.SECONDS)).isTrue();
+
+        for (var i = 0; i < 100 && dispatcher.getActiveUsers() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(dispatcher.getActiveUsers()).isZero();
+        assertThat(dispatcher.getFailedCount()).isEqualTo(1);
+    }
+
+    /**
+     * Диспетчер из create выполняет апдейты в виртуальных потоках
+     */
+    @Test
+    public void create_should_runOnVirtualThreads() throws Exception {
+        var dispatcher = VirtualThreadDispatcher.create();
+        var virtual = new CompletableFuture<Boolean>();
+        dispatcher.dispatch(1, () -> virtual.complete(Thread.currentThread().isVirtual()));
+        assertThat(virtual.get(10, TimeUnit.SECONDS)).isTrue();
+    }
+}
@@ -0,0 +1,38 @@
+package ru.urfu.bot.commands;
+
+import org.junit.Test;
+import ru.urfu.bot.keyboards.Keyboards;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandRegistryTest {
+
+    /**
+     * Разные написания одной команды должны давать одну команду
+     */
+    @Test
+    public void resolve_should_normalizeText() {
+        var registry = CommandRegistry.defaultMenu;
+
+        assertThat(registry.resolve(Keyboards.main, "  ЕЩЁ ")).isEqualTo(Command.more);
+        assertThat(registry.resolve(Keyboards.main, "eщё")).isEqualTo(Command.more);
+        assertThat(registry.resolve(Keyboards.main, "лайк")).isEqualTo(Command.like);
+        assertThat(registry.resolve(Keyboards.main, "❤")).isEqualTo(Command.like);
+        assertThat(registry.resolve(Keyboards.main, "привет")).isEqualTo(Command.unknown);
+    }
+
+    /**
+     * Номера кнопок из Discord должны переводиться в команды по текущей клавиатуре
+     */
+    @Test
+    public void resolve_should_translateButtonNumbers() {
+        assertThat(CommandRegistry.defaultMenu.resolve(Keyboards.main, "1")).isEqualTo(Command.like);
+        assertThat(CommandRegistry.defaultMenu.resolve(Keyboards.main, "2")).isEqualTo(Command.next);
+        assertThat(CommandRegistry.defaultMenu.resolve(Keyboards.main, "3")).isEqualTo(Command.more);
+        assertThat(CommandRegistry.defaultMenu.resolve(Keyboards.main, "4")).isEqualTo(Command.unknown);
+        assertThat(CommandRegistry.additionalMenu.resolve(Keyboards.additionalMenuWithNext, "5")).isEqualTo(Command.nextPage);
+        assertThat(CommandRegistry.additionalMenu.resolve(Keyboards.additionalMenu, "4")).isEqualTo(Command.back);
+        assertThat(CommandRegistry.additionalMenu.resolve(Keyboards.additionalMenu, "5")).isEqualTo(Command.filters);
+        assertThat(CommandRegistry.additionalMenu.resolve(Keyboards.additionalMenuWithNext, "6")).isEqualTo(Command.filters);
+    }
+}
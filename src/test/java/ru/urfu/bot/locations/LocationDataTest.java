@@ -4,6 +4,8 @@ import junit.framework.TestCase;
 import org.junit.Assert;
 import ru.urfu.profile.Profile;
 
+import java.util.List;
+
 public class LocationDataTest extends TestCase {
 
     public void testGetProfilesInRadius() {
@@ -39,4 +41,36 @@ public class LocationDataTest extends TestCase {
         Assert.assertEquals(list.size(), 1);
         Assert.assertTrue(list.contains(p1));
     }
-}
\ No newline at end of file
+
+    public void testGetProfilesInRadiusSortedByDistance() {
+        var locData = new LocationData();
+        var far = new Profile(0);
+        far.setLocation(new Location(10.08, 20));
+        locData.addProfile(far);
+        var near = new Profile(1);
+        near.setLocation(new Location(10.01, 20));
+        locData.addProfile(near);
+        var middle = new Profile(2);
+        middle.setLocation(new Location(10.04, 20));
+        locData.addProfile(middle);
+
+        var list = locData.getProfilesIn(new Location(10, 20), 10);
+        Assert.assertEquals(List.of(near, middle, far), list);
+
+        var limited = locData.getProfilesIn(new Location(10, 20), 10, 2);
+        Assert.assertEquals(List.of(near, middle), limited);
+    }
+
+    public void testAddProfileTwiceMovesProfile() {
+        var locData = new LocationData();
+        var p = new Profile(0);
+        p.setLocation(new Location(10, 20));
+        locData.addProfile(p);
+        p.setLocation(new Location(50, 50));
+        locData.addProfile(p);
+
+        Assert.assertNull(locData.getProfilesIn(new Location(10, 20)));
+        Assert.assertTrue(locData.getProfilesIn(new Location(10, 20), 20).isEmpty());
+        Assert.assertEquals(List.of(p), locData.getProfilesIn(new Location(50, 50), 1));
+    }
+}
@@ -0,0 +1,57 @@
+package ru.urfu.bot.metrics;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class HistogramTest {
+
+    /**
+     * Каждое значение должно попадать в корзину, верхняя граница которой не меньше значения и отличается не больше чем на 1/16
+     */
+    @Test
+    public void bucketOf_should_keepRelativeErrorSmall() {
+        for (var value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE / 3}) {
+            var upper = Histogram.upperBound(Histogram.bucketOf(value));
+            assertThat(upper).isGreaterThanOrEqualTo(value);
+            assertThat(upper - value).isLessThanOrEqualTo(value / 16);
+        }
+    }
+
+    /**
+     * Перцентили равномерного ряда должны совпадать с точными с точностью корзины
+     */
+    @Test
+    public void getPercentile_should_matchExactWithinBucket() {
+        var histogram = new Histogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100_000);
+        assertThat(histogram.getMax()).isEqualTo(100_000_000);
+        assertThat((double) histogram.getPercentile(0.5)).isCloseTo(50_000_000, within(50_000_000 / 16d));
+        assertThat((double) histogram.getPercentile(0.99)).isCloseTo(99_000_000, within(99_000_000 / 16d));
+        assertThat(histogram.getPercentile(1)).isEqualTo(100_000_000);
+        assertThat(histogram.getMean()).isCloseTo(50_000_500, within(1d));
+    }
+
+    /**
+     * Замеры и ошибки должны раскладываться по этапу, платформе и метке, а сводка - содержать их все
+     */
+    @Test
+    public void registry_should_separateStagesPlatformsAndLabels() {
+        var registry = new MetricsRegistry();
+        registry.record(Stage.handle, true, "next", 1_000_000);
+        registry.record(Stage.handle, true, "next", 3_000_000);
+        registry.record(Stage.handle, false, "next", 2_000_000);
+        registry.fail(Stage.handle, true, "like");
+
+        assertThat(registry.getHistogram(Stage.handle, true, "next").getCount()).isEqualTo(2);
+        assertThat(registry.getHistogram(Stage.handle, false, "next").getCount()).isEqualTo(1);
+        assertThat(registry.getHistogram(Stage.select, true, "next")).isNull();
+        assertThat(registry.getFailures(Stage.handle, true, "like")).isEqualTo(1);
+        assertThat(registry.dump()).contains("telegram", "discord", "next", "like");
+    }
+}
@@ -0,0 +1,200 @@
+package ru.urfu.bot.outbound;
+
+import org.junit.Test;
+import ru.urfu.bot.keyboards.Keyboards;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OutboundQueueTest {
+
+    /**
+     * Сообщения чата должны уходить по порядку, а тексты, ждущие в очереди, склеиваться
+     */
+    @Test
+    public void submit_should_keepOrderAndCoalesceTexts() throws Exception {
+        var sent = new ArrayList<OutboundMessage>();
+        var release = new CountDownLatch(1);
+        var queue = new OutboundQueue(message -> {
+            release.await();
+            synchronized (sent) {
+                sent.add(message);
+            }
+        }, 1000, 1000, 1000, 1);
+
+        var futures = new ArrayList<CompletableFuture<Void>>();
+        futures.add(queue.submit(OutboundMessage.photo(1, "photo1", "первое", Keyboards.main)));
+        futures.add(queue.submit(OutboundMessage.text(1, "второе", null)));
+        futures.add(queue.submit(OutboundMessage.text(1, "третье", Keyboards.additionalMenu)));
+        futures.add(queue.submit(OutboundMessage.photo(1, "photo2", "четвертое", Keyboards.main)));
+        release.countDown();
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertThat(sent).hasSize(3);
+        assertThat(sent.get(0).getPhotoLink()).isEqualTo("photo1");
+        assertThat(sent.get(1).getText()).isEqualTo("второе\n\nтретье");
+        assertThat(sent.get(1).getKeyboard()).isEqualTo(Keyboards.additionalMenu);
+        assertThat(sent.get(2).getPhotoLink()).isEqualTo("photo2");
+        assertThat(queue.getCoalescedCount()).isEqualTo(1);
+    }
+
+    /**
+     * В Discord склеенный текст вместе с клавиатурой, которая выводится под ним, не должен превышать 2000 символов
+     */
+    @Test
+    public void submit_should_notCoalescePastDiscordLimit() throws Exception {
+        var sent = new ArrayList<OutboundMessage>();
+        var release = new CountDownLatch(1);
+        var queue = new OutboundQueue(message -> {
+            release.await();
+            synchronized (sent) {
+                sent.add(message);
+            }
+        }, 1000, 1000, 1000, 1, OutboundQueue::discordTextLimit);
+
+        var futures = new ArrayList<CompletableFuture<Void>>();
+        futures.add(queue.submit(OutboundMessage.photo(1, "photo1", "первое", Keyboards.main)));
+        futures.add(queue.submit(OutboundMessage.text(1, "а".repeat(1500), null)));
+        // вместе с клавиатурой на один символ длиннее лимита, без клавиатуры поместилось бы
+        var keyboardLength = Keyboards.main.getDiscordKeyboard().getKeyboard().length() + 1;
+        futures.add(queue.submit(OutboundMessage.text(1, "б".repeat(OutboundQueue.discordTextLength - 1500 - 2 - keyboardLength + 1),
+                Keyboards.main)));
+        release.countDown();
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertThat(sent).hasSize(3);
+        for (var message : sent) {
+            var keyboard = message.getKeyboard() == null ? "" : "\n" + message.getKeyboard().getDiscordKeyboard().getKeyboard();
+            assertThat(message.getText().length() + keyboard.length()).isLessThanOrEqualTo(OutboundQueue.discordTextLength);
+        }
+        assertThat(queue.getCoalescedCount()).isZero();
+    }
+
+    /**
+     * Сообщение, на которое платформа ответила retry-after, должно быть отправлено повторно
+     */
+    @Test
+    public void submit_should_retryAfterRateLimit() throws Exception {
+        var attempts = new AtomicInteger();
+        var queue = new OutboundQueue(message -> {
+            if (attempts.getAndIncrement() == 0) {
+                throw new RetryAfterException(50, null);
+            }
+        }, 1000, 1000, 1000, 1);
+
+        queue.submit(OutboundMessage.text(1, "текст", null)).get(10, TimeUnit.SECONDS);
+
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(queue.getRetriedCount()).isEqualTo(1);
+        assertThat(queue.getSentCount()).isEqualTo(1);
+    }
+
+    /**
+     * Ошибка отправки должна завершать future с ошибкой и не мешать следующим сообщениям
+     */
+    @Test
+    public void submit_should_failFutureOnError() throws Exception {
+        var queue = new OutboundQueue(message -> {
+            if (message.hasPhoto()) {
+                throw new IllegalStateException("test");
+            }
+        }, 1000, 1000, 1000, 1);
+
+        var failed = queue.submit(OutboundMessage.photo(1, "photo", "подпись", null));
+        queue.submit(OutboundMessage.text(1, "текст", null)).get(10, TimeUnit.SECONDS);
+
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(queue.getFailedCount()).isEqualTo(1);
+    }
+
+    /**
+     * В один чат нельзя отправлять чаще, чем позволяет его ведро, а другие чаты при этом не ждут
+     */
+    @Test
+    public void submit_should_limitRatePerChat() throws Exception {
+        var times = new ArrayList<Long>();
+        List<Long> otherTimes = new ArrayList<>();
+        var queue = new OutboundQueue(message -> {
+            synchronized (times) {
+                (message.getChatId() == 1 ? times : otherTimes).add(System.nanoTime());
+            }
+        }, 1000, 20, 1, 2);
+
+        var start = System.nanoTime();
+        var futures = new ArrayList<CompletableFuture<Void>>();
+        for (var i = 0; i < 5; i++) {
+            futures.add(queue.submit(OutboundMessage.photo(1, "photo" + i, "", null)));
+        }
+        futures.add(queue.submit(OutboundMessage.text(2, "текст", null)));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        assertThat(times.get(4) - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(190));
+        assertThat(otherTimes.get(0) - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    /**
+     * Альбом не склеивается с текстами и уходит одним сообщением, а больше 10 фото в него положить нельзя
+     */
+    @Test
+    public void album_should_beSentAsOneMessage() throws Exception {
+        var sent = new ArrayList<OutboundMessage>();
+        var queue = new OutboundQueue(message -> {
+            synchronized (sent) {
+                sent.add(message);
+            }
+        }, 1000, 1000, 1000, 1);
+        var links = new ArrayList<String>();
+        for (var i = 0; i < OutboundMessage.maxAlbumSize; i++) {
+            links.add("photo" + i);
+        }
+
+        queue.submit(OutboundMessage.text(1, "текст", null));
+        queue.submit(OutboundMessage.album(1, links, links)).get(10, TimeUnit.SECONDS);
+
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(1).getAlbumLinks()).isEqualTo(links);
+        links.add("photo10");
+        assertThatThrownBy(() -> OutboundMessage.album(1, links, links)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Сообщение, пришедшее в чат с опустевшей очередью, должно уйти сразу, если в ведре есть токены,
+     * а не ждать, пока ведро наполнится
+     */
+    @Test
+    public void submit_should_sendAtOnce_when_chatHasTokens() throws Exception {
+        var queue = new OutboundQueue(message -> { }, 30, 1, 3, 1);
+
+        queue.submit(OutboundMessage.photo(1, "photo1", "первое", Keyboards.main)).get(10, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        var start = System.nanoTime();
+        queue.submit(OutboundMessage.photo(1, "photo2", "второе", Keyboards.main)).get(10, TimeUnit.SECONDS);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(300);
+        assertThat(queue.getSentCount()).isEqualTo(2);
+        assertThat(queue.getActiveChats()).isEqualTo(1);
+    }
+
+    /**
+     * Ведро должно отдавать burst токенов сразу, а дальше пополняться с заданной скоростью
+     */
+    @Test
+    public void tokenBucket_should_refillWithRate() {
+        var second = TimeUnit.SECONDS.toNanos(1);
+        var bucket = new TokenBucket(2, 2, 0);
+
+        assertThat(bucket.tryAcquire(0)).isZero();
+        assertThat(bucket.tryAcquire(0)).isZero();
+        assertThat(bucket.tryAcquire(0)).isEqualTo(second / 2);
+        assertThat(bucket.tryAcquire(second / 2)).isZero();
+        assertThat(bucket.untilFull(second / 2)).isEqualTo(second);
+        assertThat(bucket.untilFull(3 * second / 2)).isZero();
+    }
+}
@@ -0,0 +1,146 @@
+package ru.urfu.bot.photos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PhotoCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Одинаковые фото из разных источников должны храниться один раз и делить загруженные id
+     */
+    @Test
+    public void put_should_addressByContent() {
+        var cache = new PhotoCache(1000);
+        var first = cache.put("https://cdn/a.jpg", photo(100, 1));
+        var second = cache.put("telegram-file-id", photo(100, 1));
+
+        cache.putUploadId("telegram", "https://cdn/a.jpg", "uploaded");
+
+        assertThat(first).isEqualTo(second).hasSize(64);
+        assertThat(cache.getMemoryBytes()).isEqualTo(100);
+        assertThat(cache.getUploadId("telegram", "telegram-file-id")).isEqualTo("uploaded");
+        assertThat(cache.getUploadId("discord", "telegram-file-id")).isNull();
+    }
+
+    /**
+     * Память не должна превышать лимит, вытесняются давно не использованные фото
+     */
+    @Test
+    public void put_should_evictLeastRecentlyUsed() {
+        var cache = new PhotoCache(250);
+        cache.put("a", photo(100, 1));
+        cache.put("b", photo(100, 2));
+        cache.getBySource("a");
+        cache.put("c", photo(100, 3));
+
+        assertThat(cache.getMemoryBytes()).isEqualTo(200);
+        assertThat(cache.getBySource("a")).isEqualTo(photo(100, 1));
+        assertThat(cache.getBySource("b")).isNull();
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.getMemoryHits()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    /**
+     * Вытесненное из памяти фото должно читаться с диска, в том числе после перезапуска,
+     * а диск не должен превышать свой лимит
+     */
+    @Test
+    public void get_should_fallBackToDisk() throws Exception {
+        var directory = folder.getRoot().toPath();
+        var cache = new PhotoCache(150, directory, 250);
+        var first = cache.put("a", photo(100, 1));
+        var second = cache.put("b", photo(100, 2));
+
+        assertThat(cache.get(first)).isEqualTo(photo(100, 1));
+        assertThat(cache.getDiskHits()).isEqualTo(1);
+
+        cache.put("c", photo(100, 3));
+        assertThat(cache.getDiskBytes()).isEqualTo(200);
+        assertThat(cache.get(second)).isNull();
+
+        var restarted = new PhotoCache(150, directory, 250);
+        assertThat(restarted.getDiskBytes()).isEqualTo(200);
+        assertThat(restarted.get(first)).isEqualTo(photo(100, 1));
+    }
+
+    /**
+     * Загрузчик должен вызываться только при промахе
+     */
+    @Test
+    public void fetch_should_loadOnlyOnMiss() throws Exception {
+        var cache = new PhotoCache(1000);
+        var loads = new AtomicInteger();
+        IPhotoLoader loader = sourceId -> {
+            loads.incrementAndGet();
+            return photo(10, 7);
+        };
+
+        cache.fetch("a", loader);
+        cache.fetch("a", loader);
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.getHash("a")).isNotNull();
+    }
+
+    /**
+     * Одновременные промахи по одному источнику должны загружать фото один раз
+     */
+    @Test
+    public void fetch_should_loadOnce_when_missesAreConcurrent() throws Exception {
+        var cache = new PhotoCache(1000);
+        var loads = new AtomicInteger();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        IPhotoLoader loader = sourceId -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return photo(10, 7);
+        };
+
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var first = executor.submit(() -> cache.fetch("a", loader));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            var others = new ArrayList<Future<byte[]>>();
+            for (var i = 0; i < 3; i++) {
+                others.add(executor.submit(() -> cache.fetch("a", loader)));
+            }
+            Thread.sleep(50);
+            release.countDown();
+
+            assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(photo(10, 7));
+            for (var other : others) {
+                assertThat(other.get(10, TimeUnit.SECONDS)).isEqualTo(photo(10, 7));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    private static byte[] photo(int size, int seed) {
+        var bytes = new byte[size];
+        for (var i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * seed);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,260 @@
+package ru.urfu.bot.storage;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.urfu.bot.MatchHandler;
+import ru.urfu.bot.ProfileData;
+import ru.urfu.bot.locations.Location;
+import ru.urfu.profile.Gender;
+import ru.urfu.profile.Profile;
+import ru.urfu.profile.SearchPreferences;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LogStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath();
+        MatchHandler.clear();
+    }
+
+    /**
+     * Профили, локации и лайки должны пережить перезапуск
+     */
+    @Test
+    public void recover_should_restoreProfilesAndLikes() throws Exception {
+        try (var storage = new LogStorage(directory)) {
+            var profileData = new ProfileData(storage);
+            var first = createProfile(1, "Аня");
+            var second = createProfile(2, "Боря");
+            profileData.addProfile(first);
+            profileData.addProfile(second);
+            profileData.updateLocation(first, new Location(60.6, 56.8));
+            profileData.likeProfile(first, second);
+            profileData.likeProfile(second, first);
+        }
+        MatchHandler.clear();
+
+        var restored = recover(new LogStorage(directory));
+
+        assertThat(restored.size()).isEqualTo(2);
+        var first = restored.getMap().get(1L);
+        var second = restored.getMap().get(2L);
+        assertThat(first.getName()).isEqualTo("Аня");
+        assertThat(first.getGender()).isEqualTo(Gender.female);
+        assertThat(first.getLocation()).isEqualTo(new Location(60.6, 56.8));
+        assertThat(restored.getLocationData().getProfilesIn(new Location(60.6, 56.8))).containsExactly(first);
+        assertThat(second.getLocation()).isNull();
+        assertThat(MatchHandler.getMutualLikes(first)).containsExactly(second);
+    }
+
+    /**
+     * После сворачивания в снимок данные должны остаться теми же, а журнал должен опустеть
+     */
+    @Test
+    public void compact_should_keepLatestStateInSnapshot() throws Exception {
+        try (var storage = new LogStorage(directory)) {
+            var profileData = new ProfileData(storage);
+            var first = createProfile(1, "Аня");
+            var second = createProfile(2, "Боря");
+            profileData.addProfile(first);
+            profileData.addProfile(second);
+            first.setName("Анна");
+            profileData.addProfile(first);
+            storage.saveLike(1, 2);
+            storage.saveLike(2, 1);
+            storage.saveUnlike(2, 1);
+
+            storage.compact();
+        }
+        MatchHandler.clear();
+
+        assertThat(Files.exists(directory.resolve("log"))).isFalse();
+        var restored = recover(new LogStorage(directory));
+
+        assertThat(restored.size()).isEqualTo(2);
+        var first = restored.getMap().get(1L);
+        var second = restored.getMap().get(2L);
+        assertThat(first.getName()).isEqualTo("Анна");
+        assertThat(MatchHandler.getLikesByUser(first)).containsExactly(second);
+        assertThat(MatchHandler.getLikesByUser(second)).isEmpty();
+    }
+
+    /**
+     * Профили из снимка должны читать строки лениво, но отдавать те же данные
+     */
+    @Test
+    public void mappedSnapshot_should_decodeProfilesLazily() throws Exception {
+        try (var storage = new LogStorage(directory)) {
+            var profileData = new ProfileData(storage);
+            var profile = createProfile(1, "Аня");
+            profile.setDescription(null);
+            profileData.addProfile(profile);
+            profileData.updateLocation(profile, new Location(60.6, 56.8));
+            storage.compact();
+        }
+
+        var snapshot = MappedSnapshot.open(directory.resolve("snapshot"));
+        assertThat(snapshot.profileCount()).isEqualTo(1);
+        assertThat(snapshot.profileId(0)).isEqualTo(1L);
+
+        var profile = snapshot.profile(0);
+        assertThat(profile).isInstanceOf(LazyProfile.class);
+        assertThat(profile.getLocation()).isEqualTo(new Location(60.6, 56.8));
+        assertThat(profile.getAge()).isEqualTo(20);
+        assertThat(profile.getName()).isEqualTo("Аня");
+        assertThat(profile.getCity()).isEqualTo("Екатеринбург");
+        assertThat(profile.getDescription()).isNull();
+        assertThat(profile).isEqualTo(createProfile(1, "Аня"));
+    }
+
+    /**
+     * Предпочтения поиска должны пережить перезапуск и через журнал, и через снимок
+     */
+    @Test
+    public void recover_should_restorePreferences() throws Exception {
+        var preferences = new SearchPreferences(Gender.male, 20, 30, "Екатеринбург");
+        try (var storage = new LogStorage(directory)) {
+            var profileData = new ProfileData(storage);
+            profileData.addProfile(createProfile(1, "Аня"));
+            profileData.updatePreferences(profileData.getMap().get(1L), preferences);
+            profileData.addProfile(createProfile(2, "Боря"));
+        }
+        MatchHandler.clear();
+
+        var restored = recover(new LogStorage(directory));
+        assertThat(restored.getMap().get(1L).getPreferences()).isEqualTo(preferences);
+        assertThat(restored.getMap().get(2L).getPreferences()).isSameAs(SearchPreferences.any);
+
+        try (var storage = new LogStorage(directory)) {
+            recover(storage);
+            storage.compact();
+        }
+        var snapshot = MappedSnapshot.open(directory.resolve("snapshot"));
+        for (var i = 0; i < snapshot.profileCount(); i++) {
+            var profile = snapshot.profile(i);
+            assertThat(profile.getPreferences()).isEqualTo(profile.ID == 1 ? preferences : SearchPreferences.any);
+        }
+    }
+
+    /**
+     * Мессенджер юзера должен пережить перезапуск и через журнал, и через снимок
+     */
+    @Test
+    public void recover_should_restorePlatform() throws Exception {
+        try (var storage = new LogStorage(directory)) {
+            var profileData = new ProfileData(storage);
+            var discord = createProfile(1, "Аня");
+            discord.setFromTelegram(false);
+            profileData.addProfile(discord);
+            profileData.addProfile(createProfile(2, "Боря"));
+        }
+        MatchHandler.clear();
+
+        var restored = recover(new LogStorage(directory));
+        assertThat(restored.getMap().get(1L).isFromTelegram()).isFalse();
+        assertThat(restored.getMap().get(2L).isFromTelegram()).isTrue();
+
+        try (var storage = new LogStorage(directory)) {
+            recover(storage);
+            storage.compact();
+        }
+        var snapshot = MappedSnapshot.open(directory.resolve("snapshot"));
+        for (var i = 0; i < snapshot.profileCount(); i++) {
+            var profile = snapshot.profile(i);
+            assertThat(profile.isFromTelegram()).isEqualTo(profile.ID != 1);
+        }
+    }
+
+    /**
+     * Восстановление из снимка не должно читать строки профилей, но профили должны находиться по городу
+     */
+    @Test
+    public void recover_should_keepSnapshotStringsLazy() throws Exception {
+        try (var storage = new LogStorage(directory)) {
+            var profileData = new ProfileData(storage);
+            for (var i = 1; i <= 10; i++) {
+                var profile = createProfile(i, "Аня" + i);
+                if (i % 2 == 0) {
+                    profile.setCity("Пермь");
+                }
+                profileData.addProfile(profile);
+            }
+            storage.compact();
+        }
+        MatchHandler.clear();
+        try (var storage = new LogStorage(directory)) {
+            assertThat(storage.expectedProfileCount()).isEqualTo(10);
+        }
+
+        var restored = recover(new LogStorage(directory));
+        for (var profile : restored.getMap().values()) {
+            assertThat(profile).isInstanceOf(LazyProfile.class);
+            assertThat(((LazyProfile) profile).isLoaded()).isFalse();
+        }
+
+        var preferences = new SearchPreferences(null, 0, Integer.MAX_VALUE, "пермь");
+        var index = restored.getPreferenceIndex().nextMatch(preferences, 0, restored.size());
+        assertThat(restored.getByIndex(index).getCity()).isEqualTo("Пермь");
+    }
+
+    /**
+     * Снимок, смещения в котором не помещаются в int, не должен записываться
+     */
+    @Test
+    public void checkSize_should_rejectSnapshotOver2Gb() throws Exception {
+        assertThat(MappedSnapshot.checkSize(10, 20, 1000)).isEqualTo(16 + 10 * 16 + 20 * 16 + 1000);
+        assertThatThrownBy(() -> MappedSnapshot.checkSize(1_000_000, 134_000_000, 0)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> MappedSnapshot.checkSize(1, 0, Integer.MAX_VALUE)).isInstanceOf(IOException.class);
+    }
+
+    /**
+     * Оборванная последняя запись не должна ломать восстановление
+     */
+    @Test
+    public void recover_should_skipTornTail() throws Exception {
+        try (var storage = new LogStorage(directory)) {
+            storage.saveProfile(createProfile(1, "Аня"));
+        }
+        Files.write(directory.resolve("log"), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (var storage = new LogStorage(directory)) {
+            recover(storage);
+            storage.saveProfile(createProfile(2, "Боря"));
+        }
+        MatchHandler.clear();
+
+        var restored = recover(new LogStorage(directory));
+        assertThat(restored.size()).isEqualTo(2);
+    }
+
+    private static ProfileData recover(IStorage storage) {
+        var profileData = new ProfileData(storage);
+        profileData.recover();
+        return profileData;
+    }
+
+    private static Profile createProfile(long id, String name) {
+        var profile = new Profile(id);
+        profile.setName(name);
+        profile.setUserName("user" + id);
+        profile.setGender(Gender.female);
+        profile.setAge(20);
+        profile.setCity("Екатеринбург");
+        profile.setPhotoLink("photo" + id);
+        return profile;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.urfu.discord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.urfu.bot.photos.IPhotoLoader;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PhotoRelayTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Байты фото должны доходить без изменений
+     */
+    @Test
+    public void open_should_streamOriginalBytes() throws Exception {
+        var bytes = new byte[100_000];
+        for (var i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        var file = folder.newFile("photo.jpg").toPath();
+        Files.write(file, bytes);
+
+        try (var stream = PhotoRelay.open(file.toUri().toString())) {
+            assertThat(stream.readAllBytes()).isEqualTo(bytes);
+        }
+    }
+
+    /**
+     * Ссылки должны скачиваться напрямую, а file_id из Telegram - уходить загрузчику по id
+     */
+    @Test
+    public void load_should_routeIdsToLoader() throws Exception {
+        var file = folder.newFile("photo.jpg").toPath();
+        Files.write(file, new byte[]{1, 2, 3});
+        IPhotoLoader idLoader = id -> id.getBytes(StandardCharsets.UTF_8);
+
+        assertThat(PhotoRelay.load(file.toUri().toString(), idLoader)).containsExactly(1, 2, 3);
+        assertThat(PhotoRelay.load("AgACAgIAAxkBAAIB", idLoader))
+                .isEqualTo("AgACAgIAAxkBAAIB".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Имя вложения должно сохранять расширение источника
+     */
+    @Test
+    public void fileName_should_keepExtension() {
+        assertThat(PhotoRelay.fileName("https://cdn.discordapp.com/attachments/1/2/IMG.JPG?size=100", 0))
+                .isEqualTo("photo0.jpg");
+        assertThat(PhotoRelay.fileName("https://cdn.discordapp.com/attachments/1/2/cat.png", 3))
+                .isEqualTo("photo3.png");
+        assertThat(PhotoRelay.fileName("https://example.com/photo.v2/download", 1))
+                .isEqualTo("photo1.jpg");
+    }
+}
@@ -2,11 +2,18 @@ package ru.urfu.profile;
 
 import org.junit.Before;
 import org.junit.Test;
+import ru.urfu.bot.LikeGraph;
+import ru.urfu.bot.LongSet;
 import ru.urfu.bot.MatchHandler;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -20,8 +27,7 @@ public class MatchHandlerTest {
     public void setUp() {
         profileList = new ArrayList<>();
 
-        MatchHandler.likesTo.clear();
-        MatchHandler.likedBy.clear();
+        MatchHandler.clear();
     }
 
     /**
@@ -35,6 +41,7 @@ public class MatchHandlerTest {
 
         MatchHandler.likeProfile(liker, liked);
 
+        assertThat(MatchHandler.getLikesByUser(liker)).contains(liked);
         assertThat(MatchHandler.likesTo.get(liker)).contains(liked);
     }
 
@@ -49,6 +56,7 @@ public class MatchHandlerTest {
 
         MatchHandler.likeProfile(liker, liked);
 
+        assertThat(MatchHandler.getWhoLikedUser(liked)).contains(liker);
         assertThat(MatchHandler.likedBy.get(liked)).contains(liker);
     }
 
@@ -80,7 +88,9 @@ public class MatchHandlerTest {
 
         MatchHandler.addUser(user);
 
+        assertThat(MatchHandler.containsUser(user)).isTrue();
         assertThat(MatchHandler.likesTo).containsKey(user);
+        assertThat(MatchHandler.getLikesByUser(user)).isEmpty();
     }
 
     /**
@@ -92,7 +102,9 @@ public class MatchHandlerTest {
 
         MatchHandler.addUser(user);
 
+        assertThat(MatchHandler.containsUser(user)).isTrue();
         assertThat(MatchHandler.likedBy).containsKey(user);
+        assertThat(MatchHandler.getWhoLikedUser(user)).isEmpty();
     }
 
     /**
@@ -130,6 +142,195 @@ public class MatchHandlerTest {
         assertThat(mutualLikes).containsExactlyInAnyOrderElementsOf(profileList);
     }
 
+    /**
+     * Лайки из многих потоков не должны теряться, а чтение во время записи не должно падать
+     */
+    @Test
+    public void likeProfile_should_notLoseLikes_when_calledConcurrently() throws Exception {
+        var threadsCount = 8;
+        var likesPerThread = 500;
+        var target = new Profile(100_000);
+        var likers = new ArrayList<Profile>();
+        for (var i = 0; i < threadsCount * likesPerThread; i++)
+            likers.add(new Profile(i));
+
+        var pool = Executors.newFixedThreadPool(threadsCount + 1);
+        var start = new CountDownLatch(1);
+        var done = new AtomicBoolean(false);
+        var futures = new ArrayList<Future<?>>();
+        for (var t = 0; t < threadsCount; t++) {
+            var from = t * likesPerThread;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (var i = from; i < from + likesPerThread; i++) {
+                    MatchHandler.likeProfile(likers.get(i), target);
+                    MatchHandler.likeProfile(target, likers.get(i));
+                }
+                return null;
+            }));
+        }
+        var reader = pool.submit(() -> {
+            start.await();
+            while (!done.get()) {
+                var mutual = MatchHandler.getMutualLikes(target);
+                var whoLiked = MatchHandler.getWhoLikedUser(target);
+                assertThat(whoLiked.size()).isGreaterThanOrEqualTo(mutual.size());
+            }
+            return null;
+        });
+
+        start.countDown();
+        for (var future : futures)
+            future.get(30, TimeUnit.SECONDS);
+        done.set(true);
+        reader.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertThat(MatchHandler.getWhoLikedUser(target)).containsExactlyInAnyOrderElementsOf(likers);
+        assertThat(MatchHandler.getLikesByUser(target)).containsExactlyInAnyOrderElementsOf(likers);
+        assertThat(MatchHandler.getMutualLikes(target)).hasSize(likers.size());
+        for (var liker : likers)
+            assertThat(MatchHandler.isFirstLikesSecond(liker, target)).isTrue();
+    }
+
+    /**
+     * unlikeProfile должен убирать лайк с обеих сторон
+     */
+    @Test
+    public void unlikeProfile_should_removeLikeFromBothSides() {
+        generateProfiles();
+        var liker = profileList.get(0);
+        var liked = profileList.get(1);
+
+        MatchHandler.likeProfile(liker, liked);
+        MatchHandler.unlikeProfile(liker, liked);
+
+        assertThat(MatchHandler.getLikesByUser(liker)).doesNotContain(liked);
+        assertThat(MatchHandler.getWhoLikedUser(liked)).doesNotContain(liker);
+    }
+
+    /**
+     * Лайк, замыкающий пару, должен сообщать о взаимности и сразу попадать в список взаимных
+     */
+    @Test
+    public void likeProfile_should_reportMatch_when_likeCompletesPair() {
+        generateProfiles();
+        var first = profileList.get(0);
+        var second = profileList.get(1);
+
+        assertThat(MatchHandler.likeProfile(first, second)).isFalse();
+        assertThat(MatchHandler.getMutualCount(first)).isZero();
+        assertThat(MatchHandler.likeProfile(second, first)).isTrue();
+        assertThat(MatchHandler.likeProfile(second, first)).isFalse();
+
+        assertThat(MatchHandler.getMutualLikes(first)).containsExactly(second);
+        assertThat(MatchHandler.getMutualLikes(second)).containsExactly(first);
+        assertThat(MatchHandler.getMutualCount(second)).isEqualTo(1);
+
+        MatchHandler.unlikeProfile(first, second);
+
+        assertThat(MatchHandler.getMutualLikes(first)).isEmpty();
+        assertThat(MatchHandler.getMutualCount(second)).isZero();
+    }
+
+    /**
+     * Хранение одного лайка в обе стороны не должно занимать больше 48 байт
+     */
+    @Test
+    public void likeGraph_should_keepPerLikeMemoryUnderTarget() {
+        var graph = new LikeGraph();
+        var users = 1000;
+        var likesPerUser = 100;
+        for (var liker = 0; liker < users; liker++)
+            for (var i = 1; i <= likesPerUser; i++)
+                graph.like(liker, (liker + i * 7L) % users);
+
+        var bytesPerLike = (double) graph.adjacencyBytes() / (users * likesPerUser);
+
+        assertThat(bytesPerLike).isLessThanOrEqualTo(48);
+    }
+
+    /**
+     * Проверяем добавление и удаление в примитивном множестве, в том числе нуля и элементов из одной цепочки
+     */
+    @Test
+    public void longSet_should_addAndRemoveValues() {
+        var set = new LongSet();
+        for (long i = -1000; i <= 1000; i++)
+            assertThat(set.add(i * 16)).isTrue();
+        assertThat(set.add(0)).isFalse();
+        assertThat(set.size()).isEqualTo(2001);
+
+        for (long i = -1000; i <= 1000; i += 2)
+            assertThat(set.remove(i * 16)).isTrue();
+
+        for (long i = -1000; i <= 1000; i++)
+            assertThat(set.contains(i * 16)).isEqualTo(i % 2 != 0);
+        assertThat(set.toArray()).hasSize(1000);
+    }
+
+    /**
+     * Страницы должны идти по возрастанию id без пропусков и повторов,
+     * а лайк, поставленный между запросами, не должен сдвигать уже показанные страницы
+     */
+    @Test
+    public void page_should_returnLikesByCursor() {
+        var graph = new LikeGraph();
+        for (long id = 100; id > 75; id--) {
+            graph.like(id, 1);
+        }
+
+        var first = graph.page(1, LikeGraph.LikeList.likedBy, Long.MIN_VALUE, 10);
+        graph.like(50, 1);
+        var second = graph.page(1, LikeGraph.LikeList.likedBy, first[first.length - 1], 10);
+        var third = graph.page(1, LikeGraph.LikeList.likedBy, second[second.length - 1], 10);
+
+        assertThat(first).containsExactly(76, 77, 78, 79, 80, 81, 82, 83, 84, 85);
+        assertThat(second).containsExactly(86, 87, 88, 89, 90, 91, 92, 93, 94, 95);
+        assertThat(third).containsExactly(96, 97, 98, 99, 100);
+        assertThat(graph.page(1, LikeGraph.LikeList.likedBy, 100, 10)).isEmpty();
+        assertThat(graph.page(1, LikeGraph.LikeList.likesTo, Long.MIN_VALUE, 10)).isEmpty();
+    }
+
+    /**
+     * Страница профилей должна совпадать со страницей id
+     */
+    @Test
+    public void getPage_should_returnProfiles() {
+        generateProfiles();
+        var owner = profileList.get(0);
+        for (var i = 1; i < profileList.size(); i++) {
+            MatchHandler.likeProfile(owner, profileList.get(i));
+        }
+
+        var page = MatchHandler.getPage(owner, LikeGraph.LikeList.likesTo, profileList.get(1).ID, 2);
+
+        assertThat(page).containsExactly(profileList.get(2), profileList.get(3));
+    }
+
+    /**
+     * Ожидающими ответа должны считаться только входящие лайки, которые не отозваны и не стали взаимными,
+     * а счетчик входящих лайков должен расти только на новых лайках
+     */
+    @Test
+    public void getPendingLikers_should_skipUnlikedAndMutual() {
+        generateProfiles();
+        var owner = profileList.get(0);
+        var unliked = profileList.get(1);
+        var mutual = profileList.get(2);
+        var waiting = profileList.get(3);
+        MatchHandler.likeProfile(unliked, owner);
+        MatchHandler.likeProfile(mutual, owner);
+        MatchHandler.likeProfile(waiting, owner);
+        MatchHandler.likeProfile(waiting, owner);
+        MatchHandler.unlikeProfile(unliked, owner);
+        MatchHandler.likeProfile(owner, mutual);
+
+        assertThat(MatchHandler.getPendingLikers(owner)).containsExactly(waiting.ID);
+        assertThat(MatchHandler.getPendingLikers(mutual)).isEmpty();
+        assertThat(MatchHandler.getIncomingLikeCount(owner)).isEqualTo(3);
+    }
+
     /**
      * Генерируем пользователей
      */